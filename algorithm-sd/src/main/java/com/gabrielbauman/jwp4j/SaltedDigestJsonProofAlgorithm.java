@@ -0,0 +1,347 @@
+package com.gabrielbauman.jwp4j;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.lang.JoseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+
+import static com.gabrielbauman.jwp4j.JoseUtils.sign;
+import static com.gabrielbauman.jwp4j.JsonUtils.*;
+import static java.lang.String.format;
+
+/**
+ * A {@link JsonProofAlgorithm} in which the issuer signs a single list of salted payload digests instead of signing
+ * every payload. Each payload's digest is the SHA-256 hash of a random 16 byte salt followed by the payload's bytes
+ * as they appear on the wire: its JSON value, or that JSON DEFLATE compressed if the issuer header has "zip": "DEF".
+ * <p>
+ * An issued-form proof is the issuer signature followed by one salt per payload. A presentation-form proof is the
+ * issuer signature, the presentation header signature, and then for each payload either its salt (if the payload is
+ * disclosed) or its digest (if it is withheld). Verification recomputes the digest list from the disclosed payloads and
+ * salts, so it costs two signature checks and one hash per payload.
+ */
+public final class SaltedDigestJsonProofAlgorithm implements JsonProofAlgorithm {
+
+    static final int SALT_SIZE = 16;
+    static final int DIGEST_SIZE = 32;
+
+    private static final String ALG_PREFIX = "SD-";
+    private static final String DEADLINE_PASSED = "The deadline passed before every signature was verified";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final PublicJsonWebKey issuerKey;
+    private final PublicJsonWebKey presentationKey;
+    private final String jwsAlgorithmIdentifier;
+    private final boolean compressPayloads;
+
+    public SaltedDigestJsonProofAlgorithm(String jwsAlgorithmIdentifier, PublicJsonWebKey issuerKey, PublicJsonWebKey presentationKey) {
+        this(jwsAlgorithmIdentifier, issuerKey, presentationKey, false);
+    }
+
+    /**
+     * @param compressPayloads true to DEFLATE compress the payloads of issued JWPs, and digest the compressed bytes.
+     *                         JWPs are verified the same way either way.
+     */
+    public SaltedDigestJsonProofAlgorithm(String jwsAlgorithmIdentifier, PublicJsonWebKey issuerKey, PublicJsonWebKey presentationKey,
+                                          boolean compressPayloads) {
+        this.issuerKey = issuerKey;
+        this.presentationKey = presentationKey;
+        this.jwsAlgorithmIdentifier = jwsAlgorithmIdentifier;
+        this.compressPayloads = compressPayloads;
+    }
+
+    @Override
+    public boolean handles(String alg) {
+        return alg != null && alg.startsWith(ALG_PREFIX);
+    }
+
+    @Override
+    public boolean acceptsProofLength(String alg, boolean presentationForm, int payloadCount, int disclosedPayloadCount, int proofLength) {
+
+        if (!handles(alg))
+            return false;
+
+        if (!presentationForm && disclosedPayloadCount != payloadCount)
+            return false;
+
+        final int saltsAndDigestsSize = presentationForm
+                ? disclosedPayloadCount * SALT_SIZE + (payloadCount - disclosedPayloadCount) * DIGEST_SIZE
+                : payloadCount * SALT_SIZE;
+        final int signatureCount = presentationForm ? 2 : 1;
+        final int signaturesSize = proofLength - saltsAndDigestsSize;
+        final int signatureLength = JoseUtils.signatureLength(alg.substring(ALG_PREFIX.length()));
+
+        return (signatureLength > 0)
+                ? signaturesSize == signatureCount * signatureLength
+                : signaturesSize > 0 && signaturesSize % signatureCount == 0;
+    }
+
+    @Override
+    public void verify(JsonWebProof jwp) {
+        validate(jwp).throwIfInvalid();
+    }
+
+    @Override
+    public VerificationResult validate(JsonWebProof jwp) {
+        return validate(jwp, false, 0L);
+    }
+
+    @Override
+    public VerificationResult validate(JsonWebProof jwp, long deadline) {
+        return validate(jwp, true, deadline);
+    }
+
+    /**
+     * Charges for the one or two signatures in the proof, weighted by the cost of verifying a signature with the JWP's
+     * JWS algorithm. Hashing the payloads is cheap next to that, so it isn't charged.
+     */
+    @Override
+    public long estimateVerificationCost(JsonWebProof jwp) {
+
+        final String jpaIdentifier = (String) jwp.issuerHeader.get("alg");
+        final int signatureCount = jwp.isInPresentationForm() ? 2 : 1;
+
+        return (long) signatureCount * JoseUtils.verificationCost(
+                handles(jpaIdentifier) ? jpaIdentifier.substring(ALG_PREFIX.length()) : null);
+    }
+
+    private VerificationResult validate(JsonWebProof jwp, boolean hasDeadline, long deadline) {
+
+        final String jpaIdentifier = (String) jwp.issuerHeader.get("alg");
+
+        // Bail if we can't handle the JWP's alg.
+        if (!this.handles(jpaIdentifier)) {
+            return VerificationResult.unverifiable(
+                    format("SaltedDigestJsonProofAlgorithm cannot handle alg %s", jpaIdentifier));
+        }
+
+        // The alg comes from the untrusted issuer header, so only accept the one this instance verifies with
+        final String jwsAlgorithm = jpaIdentifier.substring(ALG_PREFIX.length());
+        if (!jwsAlgorithm.equals(expectedJwsAlgorithm()))
+            return VerificationResult.invalid(
+                    format("This JWP's alg %s doesn't match the issuer key's algorithm", jpaIdentifier));
+
+        final List<Object> payloads = jwp.payloads;
+        final boolean presentation = jwp.isInPresentationForm();
+
+        // Work out how much of the proof is taken up by salts and digests; what's left is the signatures.
+        int disclosedCount = 0;
+        for (int i = 0; i < payloads.size(); i++) {
+            if (!jwp.isWithheld(i)) disclosedCount++;
+        }
+
+        final int saltsAndDigestsSize = presentation
+                ? disclosedCount * SALT_SIZE + (payloads.size() - disclosedCount) * DIGEST_SIZE
+                : payloads.size() * SALT_SIZE;
+
+        final int signaturesSize = jwp.proof.length - saltsAndDigestsSize;
+        final int signatureCount = presentation ? 2 : 1;
+
+        // Bail if the proof value has an impossible length
+        if (signaturesSize <= 0 || signaturesSize % signatureCount != 0)
+            return VerificationResult.invalid("This JWP's proof value has an impossible length");
+
+        if (!presentation && disclosedCount != payloads.size())
+            return VerificationResult.invalid("An issued-form JWP must contain every payload");
+
+        final int signatureSize = signaturesSize / signatureCount;
+
+        // Rebuild the list of digests the issuer signed
+        final MessageDigest sha256 = newSha256();
+        final ByteArrayOutputStream digests = new ByteArrayOutputStream(payloads.size() * DIGEST_SIZE);
+
+        int offset = signaturesSize;
+        for (int i = 0; i < payloads.size(); i++) {
+            if (!jwp.isWithheld(i)) {
+                digests.writeBytes(digest(sha256, Arrays.copyOfRange(jwp.proof, offset, offset + SALT_SIZE), jwp.getPayloadBytes(i)));
+                offset += SALT_SIZE;
+            } else {
+                digests.writeBytes(Arrays.copyOfRange(jwp.proof, offset, offset + DIGEST_SIZE));
+                offset += DIGEST_SIZE;
+            }
+        }
+
+        // Verify the issuer's signature over the original issuer header and the digest list
+        if (hasDeadline && System.nanoTime() - deadline >= 0)
+            return VerificationResult.rejected(DEADLINE_PASSED);
+        if (!JoseUtils.verify(
+                jwsAlgorithm,
+                this.issuerKey,
+                issuerSigningInput(jwp.getIssuerHeaderJson(), digests.toByteArray()),
+                Arrays.copyOfRange(jwp.proof, 0, signatureSize)
+        ))
+            return VerificationResult.invalid("The issuer signature is incorrect; this JWP is invalid.");
+
+        if (!presentation)
+            return VerificationResult.valid();
+
+        // Verify the presentation header
+        PublicJsonWebKey presentationKey;
+        try {
+            presentationKey = PublicJsonWebKey.Factory.newPublicJwk(
+                    Objects.requireNonNull(
+                            getJSONObject(jwp.issuerHeader, "presentation_jwk")));
+        } catch (NullPointerException | IllegalArgumentException | JoseException e) {
+            return VerificationResult.invalid("The issuer header's presentation key is missing or invalid", e);
+        }
+
+        if (hasDeadline && System.nanoTime() - deadline >= 0)
+            return VerificationResult.rejected(DEADLINE_PASSED);
+        if (!JoseUtils.verify(
+                jwsAlgorithm,
+                presentationKey,
+                jwp.getPresentationHeaderJson(),
+                Arrays.copyOfRange(jwp.proof, signatureSize, signaturesSize)
+        ))
+            return VerificationResult.invalid("The presentation header was signed incorrectly; this JWP is invalid.");
+
+        // The JWP's proof is valid!
+        return VerificationResult.valid();
+    }
+
+    /**
+     * @return the JWS algorithm JWPs signed with this instance's issuer key must use
+     */
+    private String expectedJwsAlgorithm() {
+        return (null != jwsAlgorithmIdentifier || null == issuerKey)
+                ? jwsAlgorithmIdentifier
+                : JoseUtils.jwsAlgorithmFor(issuerKey);
+    }
+
+    /**
+     * Initializes the JWS algorithm and SHA-256, and runs the synthetic cycles with throwaway keys, which warms up the
+     * same code and cryptography without ever signing anything with this instance's keys.
+     */
+    @Override
+    public void warmUp(int cycles) {
+
+        if (cycles < 0)
+            throw new IllegalArgumentException("cycles cannot be negative");
+
+        JoseUtils.warmUp(jwsAlgorithmIdentifier);
+        newSha256();
+
+        WarmUpUtils.runSyntheticCycles(new SaltedDigestJsonProofAlgorithm(jwsAlgorithmIdentifier,
+                JoseUtils.generateKeyWithJwsAlgorithm(jwsAlgorithmIdentifier),
+                JoseUtils.generateKeyWithJwsAlgorithm(jwsAlgorithmIdentifier), compressPayloads), cycles);
+    }
+
+    @Override
+    public JsonWebProof issue(Object... payloads) {
+
+        if (null == payloads || payloads.length < 1)
+            throw new JsonWebProofException("Unable to issue JWP: payloads required");
+
+        // Build the issuer header
+        Map<String, Object> issuerHeader = new LinkedHashMap<>();
+        issuerHeader.put("alg", ALG_PREFIX + jwsAlgorithmIdentifier);
+        issuerHeader.put("presentation_jwk", this.presentationKey.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY));
+        if (compressPayloads)
+            JsonWebProof.putCompressionHeader(issuerHeader);
+        issuerHeader = Collections.unmodifiableMap(issuerHeader);
+
+        String issuerHeaderJson = JsonUtils.serialize(issuerHeader);
+
+        // Salt and hash each payload as it will appear on the wire
+        final List<Object> issuedPayloads = JsonWebProof.issuedPayloads(compressPayloads, payloads);
+        final MessageDigest sha256 = newSha256();
+        final ByteArrayOutputStream salts = new ByteArrayOutputStream(payloads.length * SALT_SIZE);
+        final ByteArrayOutputStream digests = new ByteArrayOutputStream(payloads.length * DIGEST_SIZE);
+
+        for (int i = 0; i < issuedPayloads.size(); i++) {
+            byte[] salt = new byte[SALT_SIZE];
+            RANDOM.nextBytes(salt);
+            salts.writeBytes(salt);
+            digests.writeBytes(digest(sha256, salt, JsonWebProof.payloadBytes(issuedPayloads, i)));
+        }
+
+        try {
+            // Sign the issuer header and digest list with the issuer key, then append the salts.
+            ByteArrayOutputStream proof = new ByteArrayOutputStream();
+            proof.write(sign(jwsAlgorithmIdentifier, this.issuerKey, issuerSigningInput(issuerHeaderJson, digests.toByteArray())));
+            proof.write(salts.toByteArray());
+
+            // Return a new JWP, pinned to the exact issuer header JSON that was signed.
+            return new JsonWebProof(issuerHeader, Base64Utils.encode(issuerHeaderJson), null, issuedPayloads, proof.toByteArray());
+
+        } catch (IOException e) {
+            throw new JsonWebProofException("Unable to issue JWP", e);
+        }
+    }
+
+    @Override
+    public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+
+        if (null == issuedFormJwp)
+            throw new IllegalArgumentException("issuedFormJwp cannot be null");
+        else if (issuedFormJwp.isInPresentationForm())
+            throw new IllegalArgumentException("The JWP is already in presentation form");
+        else if (null == issuedFormJwp.issuerHeader || issuedFormJwp.issuerHeader.isEmpty())
+            throw new IllegalArgumentException("The JWP's issuer header is empty");
+        else if (!handles((String) issuedFormJwp.issuerHeader.get("alg")))
+            throw new IllegalArgumentException("The JWP specifies some other JPA");
+        else if (null == issuedFormJwp.proof)
+            throw new IllegalArgumentException("The JWP's issued-form proof is not present");
+        else if (null == this.presentationKey || null == this.presentationKey.getPrivateKey())
+            throw new IllegalStateException("The JPA was not configured with the presentation private key");
+
+        final List<Object> originalPayloads = issuedFormJwp.payloads;
+        final int issuerSignatureSize = issuedFormJwp.proof.length - originalPayloads.size() * SALT_SIZE;
+
+        if (issuerSignatureSize <= 0)
+            throw new IllegalArgumentException("The JWP's issued-form proof has an impossible length");
+
+        // Build a presentation header with a random nonce
+        Map<String, Object> presentationHeader = Map.of("nonce", UUID.randomUUID().toString());
+        String presentationHeaderJson = JsonUtils.serialize(presentationHeader);
+
+        final MessageDigest sha256 = newSha256();
+        final boolean[] disclosed = ArrayUtils.indexMask(originalPayloads.size(), includePayloadIndexes);
+
+        try {
+            ByteArrayOutputStream proof = new ByteArrayOutputStream();
+
+            // Copy the issuer signature into the proof
+            proof.write(issuedFormJwp.proof, 0, issuerSignatureSize);
+
+            // Sign the presentation header and add it to the proof
+            proof.write(JoseUtils.sign(jwsAlgorithmIdentifier, presentationKey, presentationHeaderJson));
+
+            // Disclose the salt of each included payload, and the digest of each withheld one
+            for (int i = 0; i < originalPayloads.size(); i++) {
+                int saltOffset = issuerSignatureSize + i * SALT_SIZE;
+                byte[] salt = Arrays.copyOfRange(issuedFormJwp.proof, saltOffset, saltOffset + SALT_SIZE);
+                proof.write(disclosed[i] ? salt : digest(sha256, salt, issuedFormJwp.getPayloadBytes(i)));
+            }
+
+            // Splice the new compact serialized form together from the issued form's encoded segments
+            return JsonWebProof.splicePresentation(issuedFormJwp, disclosed, presentationHeader, presentationHeaderJson, proof.toByteArray());
+
+        } catch (IOException e) {
+            throw new JsonWebProofException("Unable to present JWP", e);
+        }
+    }
+
+    private static String issuerSigningInput(String issuerHeaderJson, byte[] digests) {
+        return issuerHeaderJson + "." + Base64Utils.encode(digests);
+    }
+
+    private static byte[] digest(MessageDigest sha256, byte[] salt, byte[] payload) {
+        sha256.update(salt);
+        return sha256.digest(payload);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+}
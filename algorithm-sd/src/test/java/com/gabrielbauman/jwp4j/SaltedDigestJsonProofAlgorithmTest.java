@@ -0,0 +1,165 @@
+package com.gabrielbauman.jwp4j;
+
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.gabrielbauman.jwp4j.JoseUtils.generateKeyWithJwsAlgorithm;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jose4j.jws.AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256;
+
+public class SaltedDigestJsonProofAlgorithmTest {
+
+    @Test
+    public void testRoundTrip() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm =
+                new SaltedDigestJsonProofAlgorithm(
+                        ECDSA_USING_P256_CURVE_AND_SHA256,
+                        issuerKey,
+                        holderKey);
+
+        JsonWebProof proof = algorithm.issue("Gabriel", "Bauman", 42);
+
+        assertThat(proof.isInPresentationForm())
+                .isFalse();
+        assertThat(proof.issuerHeader)
+                .containsKeys("presentation_jwk", "alg")
+                .containsEntry("alg", "SD-ES256");
+        assertThat(proof.proof)
+                .hasSize(64 + 3 * SaltedDigestJsonProofAlgorithm.SALT_SIZE);
+
+        JsonWebProof deserialized = JsonWebProof.parse(algorithm, proof.serialize());
+        assertThat(deserialized.getPayloads())
+                .containsExactly("Gabriel", "Bauman", 42);
+        assertThatNoException().isThrownBy(() -> algorithm.verify(deserialized));
+
+        JsonWebProof presentation = algorithm.derive(deserialized, 1);
+        assertThat(presentation.isInPresentationForm())
+                .isTrue();
+        assertThat(presentation.proof)
+                .hasSize(2 * 64 + SaltedDigestJsonProofAlgorithm.SALT_SIZE + 2 * SaltedDigestJsonProofAlgorithm.DIGEST_SIZE);
+        assertThat(presentation.getPayloads())
+                .containsExactly(null, "Bauman", null);
+        assertThatNoException().isThrownBy(() -> algorithm.verify(presentation));
+
+        // Presentations must still verify after a trip over the wire
+        JsonWebProof received = JsonWebProof.parse(algorithm, presentation.serialize());
+        assertThat(received.getPayloads())
+                .containsExactly(null, "Bauman", null);
+        assertThatNoException().isThrownBy(() -> algorithm.verify(received));
+    }
+
+    @Test
+    public void testPayloadsThatDecodeLossilyStillVerify() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm = new SaltedDigestJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+
+        // Neither payload decodes to a value that re-encodes to the same JSON, so digests must cover the wire bytes
+        JsonWebProof issued = JsonWebProof.parse(algorithm, algorithm.issue(1.5, "Gabriel", Map.of("age", 42)).serialize());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(issued));
+
+        JsonWebProof presented = JsonWebProof.parse(algorithm, algorithm.derive(issued, 0, 2).serialize());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(presented));
+        assertThat(presented.serialize().split("\\.")[2])
+                .isEqualTo(issued.serialize().split("\\.")[1].replaceFirst("~[^~]*~", "~~"));
+    }
+
+    @Test
+    public void testCompressedPayloads() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm = new SaltedDigestJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey, true);
+
+        String large = "claim ".repeat(1000);
+        JsonWebProof issued = JsonWebProof.parse(algorithm, algorithm.issue(large, 42).serialize());
+
+        assertThat(issued.issuerHeader).containsEntry("zip", "DEF");
+        assertThat(issued.serialize().length()).isLessThan(large.length() / 10);
+        assertThatNoException().isThrownBy(() -> algorithm.verify(issued));
+
+        JsonWebProof presented = JsonWebProof.parse(algorithm, algorithm.derive(issued, 0).serialize());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(presented));
+        assertThat(presented.getPayloads()).containsExactly(large, null);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm issuer = new SaltedDigestJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+        JsonProofAlgorithm verifier = new SaltedDigestJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256,
+                PublicJsonWebKey.Factory.newPublicJwk(issuerKey.getPublicKey()), null);
+
+        assertThatNoException().isThrownBy(() -> issuer.warmUp(3));
+        assertThatNoException().isThrownBy(() -> verifier.warmUp(1));
+        assertThatThrownBy(() -> verifier.warmUp(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatNoException().isThrownBy(() -> verifier.verify(issuer.derive(issuer.issue("Gabriel", "Bauman"), 1)));
+    }
+
+    @Test
+    public void testTamperedSaltIsRejected() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm =
+                new SaltedDigestJsonProofAlgorithm(
+                        ECDSA_USING_P256_CURVE_AND_SHA256,
+                        issuerKey,
+                        holderKey);
+
+        JsonWebProof issued = algorithm.issue("Gabriel", "Bauman");
+
+        byte[] tamperedProof = Arrays.copyOf(issued.proof, issued.proof.length);
+        tamperedProof[tamperedProof.length - 1] ^= 1;
+
+        JsonWebProof tampered = new JsonWebProof(issued.issuerHeader, issued.getEncodedIssuerHeader(), null, issued.payloads, tamperedProof);
+
+        assertThatThrownBy(() -> algorithm.verify(tampered))
+                .isInstanceOf(InvalidProofException.class);
+    }
+
+    @Test
+    public void testSwappedAlgsAreInvalid() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm = new SaltedDigestJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+
+        String issued = algorithm.issue("Gabriel", "Bauman").serialize();
+        String presented = algorithm.derive(JsonWebProof.parse(algorithm, issued), 1).serialize();
+
+        for (String alg : List.of("SD-RS256", "SD-HS256", "SD-none", "SD-XYZ")) {
+            assertThat(JsonWebProof.verify(algorithm, withAlg(issued, alg)).getCode())
+                    .isEqualTo(VerificationResult.Code.INVALID);
+            assertThat(JsonWebProof.verify(algorithm, withAlg(presented, alg)).getCode())
+                    .isEqualTo(VerificationResult.Code.INVALID);
+        }
+    }
+
+    private static String withAlg(String compactForm, String alg) {
+        final int dot = compactForm.indexOf('.');
+        final String issuerHeader = Base64Utils.decodeAsString(compactForm.substring(0, dot))
+                .replaceFirst("\"alg\"\\s*:\\s*\"[^\"]*\"", "\"alg\":\"" + alg + "\"");
+        return Base64Utils.encode(issuerHeader) + compactForm.substring(dot);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.gabrielbauman.jwp4j;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.lang.JoseException;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.String.format;
+
+/**
+ * A set of trusted issuer public keys indexed by key ID ("kid"). Lookups read an immutable snapshot of the index and
+ * never block; changes copy the index and swap it in atomically, so a {@link #rotate} that adds new keys and retires old
+ * ones is seen by verifiers all at once. Keys are held as parsed {@link PublicJsonWebKey} instances, so nothing is
+ * decoded when a JWP is verified.
+ */
+public final class IssuerKeyRing {
+
+    private final AtomicReference<Map<String, PublicJsonWebKey>> keys = new AtomicReference<>(Map.of());
+
+    public IssuerKeyRing() {
+    }
+
+    public IssuerKeyRing(Collection<? extends PublicJsonWebKey> keys) {
+        rotate(keys, List.of());
+    }
+
+    /**
+     * Build a key ring from a JWKS document. Every key in the set must be a public key with a "kid".
+     *
+     * @param jwksJson a JSON Web Key Set
+     * @return a key ring holding the keys in the set
+     */
+    public static IssuerKeyRing fromJwks(String jwksJson) {
+
+        List<PublicJsonWebKey> result = new ArrayList<>();
+
+        try {
+            for (JsonWebKey key : new JsonWebKeySet(jwksJson).getJsonWebKeys()) {
+                if (!(key instanceof PublicJsonWebKey))
+                    throw new IllegalArgumentException(format("Key %s is not a public key", key.getKeyId()));
+                result.add((PublicJsonWebKey) key);
+            }
+        } catch (JoseException e) {
+            throw new IllegalArgumentException("Unable to parse JWKS", e);
+        }
+
+        return new IssuerKeyRing(result);
+    }
+
+    /**
+     * Find the key with the given key ID.
+     *
+     * @param kid a key ID
+     * @return the key, or null if there is no key with that ID in the ring
+     */
+    public PublicJsonWebKey get(String kid) {
+        return (null == kid) ? null : keys.get().get(kid);
+    }
+
+    public Set<String> getKeyIds() {
+        return keys.get().keySet();
+    }
+
+    public void add(PublicJsonWebKey key) {
+        rotate(List.of(key), List.of());
+    }
+
+    public void remove(String kid) {
+        rotate(List.of(), List.of(kid));
+    }
+
+    /**
+     * Atomically add some keys and retire others. Verifiers see either the ring before the rotation or the ring after
+     * it, never a mix of the two.
+     *
+     * @param added   keys to add; each must have a "kid". Keys replace existing keys with the same ID.
+     * @param retired IDs of keys to remove
+     */
+    public void rotate(Collection<? extends PublicJsonWebKey> added, Collection<String> retired) {
+
+        for (PublicJsonWebKey key : added) {
+            if (null == key || null == key.getKeyId())
+                throw new IllegalArgumentException("Keys in an IssuerKeyRing must have a kid");
+            if (null == key.getPublicKey())
+                throw new IllegalArgumentException(format("Key %s has no public key", key.getKeyId()));
+        }
+
+        keys.updateAndGet(current -> {
+            Map<String, PublicJsonWebKey> next = new HashMap<>(current);
+            next.keySet().removeAll(retired);
+            for (PublicJsonWebKey key : added) {
+                next.put(key.getKeyId(), key);
+            }
+            return Map.copyOf(next);
+        });
+    }
+
+}
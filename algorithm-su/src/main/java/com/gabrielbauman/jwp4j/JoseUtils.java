@@ -1,23 +1,42 @@
 package com.gabrielbauman.jwp4j;
 
 import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.EllipticCurveJsonWebKey;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.OctetKeyPairJsonWebKey;
+import org.jose4j.jwk.OkpJwkGenerator;
 import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jwk.RsaJsonWebKey;
 import org.jose4j.jwk.RsaJwkGenerator;
 import org.jose4j.jws.EcdsaUsingShaAlgorithm;
+import org.jose4j.jws.EdDsaAlgorithm;
 import org.jose4j.jws.JsonWebSignature;
 import org.jose4j.jws.JsonWebSignatureAlgorithm;
 import org.jose4j.jws.RsaUsingShaAlgorithm;
+import org.jose4j.keys.EdDsaKeyUtil;
 import org.jose4j.keys.EllipticCurves;
 import org.jose4j.lang.JoseException;
 
+import java.nio.charset.StandardCharsets;
 import java.security.spec.ECParameterSpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.String.format;
 import static org.jose4j.jws.AlgorithmIdentifiers.*;
 
 interface JoseUtils {
 
+    /**
+     * JWS algorithms resolved so far; see {@link #resolveJwsAlgorithm(String)}.
+     */
+    Map<String, JsonWebSignatureAlgorithm> JWS_ALGORITHMS = new ConcurrentHashMap<>();
+
     static byte[] sign(String algorithm, PublicJsonWebKey signingKey, String signingInput) {
+        return sign(algorithm, signingKey, null == signingInput ? null : signingInput.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] sign(String algorithm, PublicJsonWebKey signingKey, byte[] signingInput) {
 
         byte[] result;
 
@@ -25,14 +44,14 @@ interface JoseUtils {
             throw new IllegalArgumentException("algorithm cannot be null or empty");
         else if (null == signingKey || null == signingKey.getPrivateKey())
             throw new IllegalArgumentException("signingKey must have a private key");
-        else if (null == signingInput || signingInput.isEmpty())
+        else if (null == signingInput || signingInput.length == 0)
             throw new IllegalArgumentException("signingInput cannot be null or empty");
 
         try {
             JsonWebSignature jws = new JsonWebSignature();
             jws.setAlgorithmHeaderValue(algorithm);
             jws.setKey(signingKey.getPrivateKey());
-            jws.setPayload(signingInput);
+            jws.setPayloadBytes(signingInput);
             jws.sign();
             // Jose4J doesn't let us get at the raw signature value, so we have to do this dance
             result = Base64Utils.decode(jws.getEncodedSignature());
@@ -45,6 +64,15 @@ interface JoseUtils {
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     static boolean verify(String algorithm, PublicJsonWebKey publicKey, String signingInput, byte[] signature) {
+        return verify(algorithm, publicKey, null == signingInput ? null : signingInput.getBytes(StandardCharsets.UTF_8), signature);
+    }
+
+    /**
+     * @return true if the signature is valid. An algorithm jose4j doesn't support, or that doesn't fit the key, can't
+     * have made the signature, so it's reported as invalid rather than thrown.
+     */
+    @SuppressWarnings("BooleanMethodIsAlwaysInverted")
+    static boolean verify(String algorithm, PublicJsonWebKey publicKey, byte[] signingInput, byte[] signature) {
 
         boolean result;
 
@@ -52,23 +80,31 @@ interface JoseUtils {
             throw new IllegalArgumentException("algorithm cannot be null or empty");
         else if (null == publicKey || null == publicKey.getPublicKey())
             throw new IllegalArgumentException("signingKey must have a private key");
-        else if (null == signingInput || signingInput.isEmpty())
+        else if (null == signingInput || signingInput.length == 0)
             throw new IllegalArgumentException("signingInput cannot be null or empty");
         else if (null == signature || signature.length < 1)
             throw new IllegalArgumentException("signature cannot be null or empty");
 
         try {
-            // This is cheesy but necessary because Jose4J doesn't let us just set a signature value on a JWS object
+            // This is cheesy but necessary because Jose4J doesn't let us just set a signature value on a JWS object.
+            // Encode the parts straight into one buffer to avoid building an intermediate string for each of them.
+            byte[] header = ("{\"alg\":\"" + algorithm + "\"}").getBytes(StandardCharsets.UTF_8);
+            byte[] payload = signingInput;
+            StringBuilder compactSerialization = new StringBuilder(
+                    Base64Utils.encodedLength(header.length) + Base64Utils.encodedLength(payload.length)
+                            + Base64Utils.encodedLength(signature.length) + 2);
+            Base64Utils.encode(header, 0, header.length, compactSerialization);
+            compactSerialization.append('.');
+            Base64Utils.encode(payload, 0, payload.length, compactSerialization);
+            compactSerialization.append('.');
+            Base64Utils.encode(signature, 0, signature.length, compactSerialization);
+
             JsonWebSignature jws =
-                    (JsonWebSignature) JsonWebSignature
-                            .fromCompactSerialization(
-                                    Base64Utils.encode("{\"alg\":\"" + algorithm + "\"}") + "." +
-                                            Base64Utils.encode(signingInput) + "." +
-                                            Base64Utils.encode(signature));
+                    (JsonWebSignature) JsonWebSignature.fromCompactSerialization(compactSerialization.toString());
             jws.setKey(publicKey.getPublicKey());
             result = jws.verifySignature();
         } catch (JoseException e) {
-            throw new RuntimeException(e);
+            result = false;
         }
 
         return result;
@@ -88,6 +124,9 @@ interface JoseUtils {
                 result = EcJwkGenerator.generateJwk(curve);
             } else if (algorithm instanceof RsaUsingShaAlgorithm) {
                 result = RsaJwkGenerator.generateJwk(2048);
+            } else if (algorithm instanceof EdDsaAlgorithm) {
+                // Ed25519 is provided by the JDK from Java 15 onwards; older runtimes fail here with a JoseException
+                result = OkpJwkGenerator.generateJwk(EdDsaKeyUtil.ED25519);
             } else {
                 throw new IllegalArgumentException(format("Can't generate JWK for JWS alg %s", algorithm));
             }
@@ -98,7 +137,15 @@ interface JoseUtils {
         return result;
     }
 
+    /**
+     * @return the JWS algorithm with the identifier. jose4j's algorithm objects are stateless, so each one is only
+     * created once.
+     */
     static JsonWebSignatureAlgorithm resolveJwsAlgorithm(String jwsAlgorithmIdentifier) {
+        return JWS_ALGORITHMS.computeIfAbsent(jwsAlgorithmIdentifier, JoseUtils::createJwsAlgorithm);
+    }
+
+    static JsonWebSignatureAlgorithm createJwsAlgorithm(String jwsAlgorithmIdentifier) {
 
         JsonWebSignatureAlgorithm result;
 
@@ -121,6 +168,9 @@ interface JoseUtils {
             case RSA_USING_SHA512:
                 result = new RsaUsingShaAlgorithm.RsaSha512();
                 break;
+            case EDDSA:
+                result = new EdDsaAlgorithm();
+                break;
             default:
                 throw new IllegalStateException(format("Unsupported JWS algorithm %s", jwsAlgorithmIdentifier));
         }
@@ -128,4 +178,99 @@ interface JoseUtils {
         return result;
     }
 
+    /**
+     * @return the length in bytes of signatures made with the JWS algorithm, or -1 if it depends on the key.
+     */
+    static int signatureLength(String jwsAlgorithmIdentifier) {
+
+        if (null == jwsAlgorithmIdentifier)
+            return -1;
+
+        switch (jwsAlgorithmIdentifier) {
+            case ECDSA_USING_P256_CURVE_AND_SHA256:
+            case EDDSA:
+                return 64;
+            case ECDSA_USING_P384_CURVE_AND_SHA384:
+                return 96;
+            case ECDSA_USING_P521_CURVE_AND_SHA512:
+                return 132;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return the rough cost of verifying one signature made with the JWS algorithm, relative to an RSA verification.
+     * Only the ratios matter; they're used to schedule verification work, not to promise timings.
+     */
+    static int verificationCost(String jwsAlgorithmIdentifier) {
+
+        if (null == jwsAlgorithmIdentifier)
+            return 1;
+
+        switch (jwsAlgorithmIdentifier) {
+            case EDDSA:
+                return 2;
+            case ECDSA_USING_P256_CURVE_AND_SHA256:
+                return 3;
+            case ECDSA_USING_P384_CURVE_AND_SHA384:
+                return 8;
+            case ECDSA_USING_P521_CURVE_AND_SHA512:
+                return 16;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @return the JWS algorithm a key is meant for: its "alg" if it has one, otherwise the usual algorithm for its type
+     * and curve, or null if there isn't one.
+     */
+    static String jwsAlgorithmFor(PublicJsonWebKey key) {
+
+        if (null != key.getAlgorithm())
+            return key.getAlgorithm();
+
+        if (key instanceof EllipticCurveJsonWebKey) {
+            switch (((EllipticCurveJsonWebKey) key).getCurveName()) {
+                case "P-256":
+                    return ECDSA_USING_P256_CURVE_AND_SHA256;
+                case "P-384":
+                    return ECDSA_USING_P384_CURVE_AND_SHA384;
+                case "P-521":
+                    return ECDSA_USING_P521_CURVE_AND_SHA512;
+                default:
+                    return null;
+            }
+        }
+
+        if (key instanceof RsaJsonWebKey)
+            return RSA_USING_SHA256;
+        else if (key instanceof OctetKeyPairJsonWebKey)
+            return EDDSA;
+        else
+            return null;
+    }
+
+    /**
+     * Load and initialize everything signing and verifying with a JWS algorithm needs: the JCA provider, key pair
+     * generator, key factory and signature engine, and the jose4j classes around them. The first real signature
+     * made after this doesn't pay for any of it.
+     */
+    static void warmUp(String jwsAlgorithmIdentifier) {
+
+        final PublicJsonWebKey key = generateKeyWithJwsAlgorithm(jwsAlgorithmIdentifier);
+        final byte[] signature = sign(jwsAlgorithmIdentifier, key, "warm-up");
+
+        // Verify with a public key rebuilt from its JWK, the way verifiers get their keys
+        try {
+            final PublicJsonWebKey publicKey = PublicJsonWebKey.Factory.newPublicJwk(
+                    key.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY));
+            if (!verify(jwsAlgorithmIdentifier, publicKey, "warm-up", signature))
+                throw new IllegalStateException(format("Warm-up signature for %s did not verify", jwsAlgorithmIdentifier));
+        } catch (JoseException e) {
+            throw new IllegalStateException("Unable to warm up " + jwsAlgorithmIdentifier, e);
+        }
+    }
+
 }
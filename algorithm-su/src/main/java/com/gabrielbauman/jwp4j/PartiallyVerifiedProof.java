@@ -0,0 +1,103 @@
+package com.gabrielbauman.jwp4j;
+
+import java.util.function.IntPredicate;
+
+import static java.lang.String.format;
+
+/**
+ * An SU JWP whose header signatures have been verified, but only some of whose payload signatures have. Payloads can
+ * only be read once their signatures have been verified; call {@link #verify(int...)} to verify more of them. Created
+ * by {@link SingleUseJsonProofAlgorithm#verifyPartially}.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class PartiallyVerifiedProof {
+
+    private final JsonWebProof jwp;
+    private final IntPredicate payloadVerifier;
+    private final boolean[] verified;
+
+    PartiallyVerifiedProof(JsonWebProof jwp, IntPredicate payloadVerifier) {
+        this.jwp = jwp;
+        this.payloadVerifier = payloadVerifier;
+        this.verified = new boolean[jwp.payloads.size()];
+    }
+
+    /**
+     * Verify the signatures of more payloads. Payloads that have already been verified aren't checked again.
+     *
+     * @param payloadIndexes indexes of the disclosed payloads to verify
+     * @return this view
+     * @throws InvalidProofException    if any of the payloads are signed incorrectly
+     * @throws IllegalArgumentException if an index is out of range or names a withheld payload
+     */
+    public PartiallyVerifiedProof verify(int... payloadIndexes) {
+
+        if (null == payloadIndexes)
+            throw new IllegalArgumentException("payloadIndexes cannot be null");
+
+        for (int index : payloadIndexes) {
+            checkDisclosed(index);
+        }
+
+        for (int index : payloadIndexes) {
+            if (isVerified(index))
+                continue;
+            if (!payloadVerifier.test(index))
+                throw new InvalidProofException(format("Payload %d was signed incorrectly; this JWP is invalid.", index));
+            synchronized (verified) {
+                verified[index] = true;
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * @return true if the payload at the index has been verified
+     */
+    public boolean isVerified(int payloadIndex) {
+        if (payloadIndex < 0 || payloadIndex >= verified.length)
+            return false;
+        synchronized (verified) {
+            return verified[payloadIndex];
+        }
+    }
+
+    /**
+     * @return true if the payload at the index was disclosed, whether or not it has been verified
+     */
+    public boolean isDisclosed(int payloadIndex) {
+        return payloadIndex >= 0 && payloadIndex < verified.length && !jwp.isWithheld(payloadIndex);
+    }
+
+    /**
+     * @return the number of payloads in the JWP, including withheld payloads
+     */
+    public int getPayloadCount() {
+        return verified.length;
+    }
+
+    /**
+     * @param payloadIndex the index of a verified payload
+     * @return the payload
+     * @throws IllegalStateException if the payload hasn't been verified
+     */
+    public Object getPayload(int payloadIndex) {
+        if (!isVerified(payloadIndex))
+            throw new IllegalStateException(format("Payload %d has not been verified", payloadIndex));
+        return jwp.payloads.get(payloadIndex);
+    }
+
+    public boolean isInPresentationForm() {
+        return jwp.isInPresentationForm();
+    }
+
+    private void checkDisclosed(int payloadIndex) {
+        if (payloadIndex < 0 || payloadIndex >= verified.length)
+            throw new IllegalArgumentException(format("Payload index %d is out of range", payloadIndex));
+        else if (jwp.isWithheld(payloadIndex))
+            throw new IllegalArgumentException(format("Payload %d was withheld", payloadIndex));
+    }
+
+}
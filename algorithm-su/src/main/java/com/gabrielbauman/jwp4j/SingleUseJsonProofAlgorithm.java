@@ -8,9 +8,8 @@ import org.jose4j.lang.JoseException;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
 
-import static com.gabrielbauman.jwp4j.ArrayUtils.split;
 import static com.gabrielbauman.jwp4j.JoseUtils.*;
 import static com.gabrielbauman.jwp4j.JsonUtils.*;
 import static java.lang.String.format;
@@ -18,13 +17,48 @@ import static java.lang.String.format;
 public final class SingleUseJsonProofAlgorithm implements JsonProofAlgorithm {
 
     private final PublicJsonWebKey issuerKey;
+    private final IssuerKeyRing issuerKeys;
     private final PublicJsonWebKey presentationKey;
     private final String jwsAlgorithmIdentifier;
+    private final boolean compressPayloads;
 
     public SingleUseJsonProofAlgorithm(String jwsAlgorithmIdentifier, PublicJsonWebKey issuerKey, PublicJsonWebKey presentationKey) {
+        this(jwsAlgorithmIdentifier, issuerKey, presentationKey, false);
+    }
+
+    /**
+     * @param compressPayloads true to DEFLATE compress the payloads of issued JWPs, and sign the compressed bytes.
+     *                         JWPs are verified the same way either way.
+     */
+    public SingleUseJsonProofAlgorithm(String jwsAlgorithmIdentifier, PublicJsonWebKey issuerKey, PublicJsonWebKey presentationKey,
+                                       boolean compressPayloads) {
         this.issuerKey = issuerKey;
+        this.issuerKeys = null;
         this.presentationKey = presentationKey;
         this.jwsAlgorithmIdentifier = jwsAlgorithmIdentifier;
+        this.compressPayloads = compressPayloads;
+    }
+
+    /**
+     * Create an instance that verifies JWPs from any issuer in a key ring, choosing the issuer key using the "kid" in
+     * each JWP's issuer header. Instances created this way can verify, but can't issue or derive JWPs.
+     *
+     * @param issuerKeys the trusted issuer keys
+     */
+    public SingleUseJsonProofAlgorithm(IssuerKeyRing issuerKeys) {
+        if (null == issuerKeys)
+            throw new IllegalArgumentException("issuerKeys cannot be null");
+        this.issuerKey = null;
+        this.issuerKeys = issuerKeys;
+        this.presentationKey = null;
+        this.jwsAlgorithmIdentifier = null;
+        this.compressPayloads = false;
+    }
+
+    private static final String DEADLINE_PASSED = "The deadline passed before every signature was verified";
+
+    private static boolean expired(long deadline) {
+        return System.nanoTime() - deadline >= 0;
     }
 
     private static byte[] extractSignatureFromProof(byte[] proofValue, int signatureSize, int signatureIndex) {
@@ -38,31 +72,149 @@ public final class SingleUseJsonProofAlgorithm implements JsonProofAlgorithm {
         return alg != null && alg.startsWith("SU-");
     }
 
+    @Override
+    public boolean acceptsProofLength(String alg, boolean presentationForm, int payloadCount, int disclosedPayloadCount, int proofLength) {
+
+        if (!handles(alg))
+            return false;
+
+        // Every payload in an issued-form JWP is signed
+        if (!presentationForm && disclosedPayloadCount != payloadCount)
+            return false;
+
+        // One signature for the issuer header, one for the presentation header if present, and one per payload.
+        final int signatureCount = disclosedPayloadCount + (presentationForm ? 2 : 1);
+        final int signatureLength = JoseUtils.signatureLength(alg.substring(3));
+
+        return (signatureLength > 0)
+                ? proofLength == signatureCount * signatureLength
+                : proofLength > 0 && proofLength % signatureCount == 0;
+    }
+
     @Override
     public void verify(JsonWebProof jwp) {
+        validate(jwp).throwIfInvalid();
+    }
+
+    @Override
+    public VerificationResult validate(JsonWebProof jwp) {
+        return validate(jwp, false, 0L);
+    }
+
+    @Override
+    public VerificationResult validate(JsonWebProof jwp, long deadline) {
+        return validate(jwp, true, deadline);
+    }
+
+    /**
+     * Charges one unit per signature in the proof, weighted by the cost of verifying a signature with the JWP's JWS
+     * algorithm.
+     */
+    @Override
+    public long estimateVerificationCost(JsonWebProof jwp) {
+
+        final String jpaIdentifier = (String) jwp.issuerHeader.get("alg");
+
+        int signatureCount = jwp.isInPresentationForm() ? 2 : 1;
+        for (int i = 0; i < jwp.payloads.size(); i++) {
+            if (!jwp.isWithheld(i)) signatureCount++;
+        }
+
+        return (long) signatureCount * JoseUtils.verificationCost(handles(jpaIdentifier) ? jpaIdentifier.substring(3) : null);
+    }
+
+    private VerificationResult validate(JsonWebProof jwp, boolean hasDeadline, long deadline) {
+
+        final PayloadSignatures payloadSignatures = new PayloadSignatures();
+        final VerificationResult headers = validateHeaders(jwp, hasDeadline, deadline, payloadSignatures);
+        if (!headers.isValid())
+            return headers;
+
+        // Verify the payload signatures
+        for (int i = 0; i < jwp.payloads.size(); i++) {
+            if (!payloadSignatures.isSigned(i))
+                continue;
+            if (hasDeadline && expired(deadline))
+                return VerificationResult.rejected(DEADLINE_PASSED);
+            if (!payloadSignatures.verify(i))
+                return VerificationResult.invalid("A payload was signed incorrectly; this JWP is invalid.");
+        }
+
+        // The JWP's proof is valid!
+        return VerificationResult.valid();
+    }
+
+    /**
+     * Verify the issuer header and presentation header signatures of an SU JWP, and only the signatures of the given
+     * payloads. The result refuses access to payloads whose signatures haven't been checked; more of them can be
+     * verified later with {@link PartiallyVerifiedProof#verify(int...)}. This saves most of the work of verifying JWPs
+     * with many payloads when only a few of them are used.
+     *
+     * @param jwp            the {@link JsonWebProof} to be verified
+     * @param payloadIndexes indexes of the disclosed payloads to verify now
+     * @return a view of the JWP that only gives access to verified payloads
+     * @throws UnverifiableProofException if the proof cannot be verified (due to algorithm configuration, etc)
+     * @throws InvalidProofException      if the headers or any of the given payloads are signed incorrectly
+     * @throws IllegalArgumentException   if an index is out of range or names a withheld payload
+     */
+    public PartiallyVerifiedProof verifyPartially(JsonWebProof jwp, int... payloadIndexes) {
+
+        if (null == jwp)
+            throw new IllegalArgumentException("jwp cannot be null");
+
+        final PayloadSignatures payloadSignatures = new PayloadSignatures();
+        validateHeaders(jwp, false, 0L, payloadSignatures).throwIfInvalid();
+
+        return new PartiallyVerifiedProof(jwp, payloadSignatures::verify).verify(payloadIndexes);
+    }
+
+    /**
+     * Verify the header signatures of a JWP, and on success fill in what's needed to verify its payload signatures.
+     */
+    private VerificationResult validateHeaders(JsonWebProof jwp, boolean hasDeadline, long deadline, PayloadSignatures payloadSignatures) {
 
         // Ensure that the JWP can be verified by this JWP
         final String jpaIdentifier = (String) jwp.issuerHeader.get("alg");
 
         // Bail if we can't handle the JWP's alg.
         if (!this.handles(jpaIdentifier)) {
-            throw new UnverifiableProofException(
+            return VerificationResult.unverifiable(
                     format("SingleUseJsonProofAlgorithm cannot handle alg %s", jpaIdentifier));
         }
 
-        // Depending on the JWP's form, some payloads will be null and have no corresponding signature in the proof.
-        // Build a list of actually-present signed payloads to use when calculating proof's length.
-        final List<Object> signedPayloads = (jwp.isInPresentationForm())
-                ? jwp.payloads.stream().filter(Objects::nonNull).collect(Collectors.toList())
-                : jwp.payloads;
+        // Find the key the issuer header should have been signed with
+        final PublicJsonWebKey issuerKey;
+        if (null == issuerKeys) {
+            issuerKey = this.issuerKey;
+        } else {
+            final Object kid = jwp.issuerHeader.get("kid");
+            if (!(kid instanceof String))
+                return VerificationResult.unverifiable("The JWP's issuer header has no kid; unable to find the issuer key");
+            issuerKey = issuerKeys.get((String) kid);
+            if (null == issuerKey)
+                return VerificationResult.unverifiable(format("No trusted issuer key with kid %s", kid));
+        }
+
+        // The alg comes from the untrusted issuer header, so only accept the one the issuer key is for
+        final String jwsAlgorithm = jpaIdentifier.substring(3);
+        if (!jwsAlgorithm.equals(expectedJwsAlgorithm(issuerKey)))
+            return VerificationResult.invalid(
+                    format("This JWP's alg %s doesn't match the issuer key's algorithm", jpaIdentifier));
+
+        // Depending on the JWP's form, some payloads will be withheld and have no corresponding signature in the proof.
+        // Count the actually-present signed payloads to use when calculating proof's length.
+        int signedPayloadCount = 0;
+        for (int i = 0; i < jwp.payloads.size(); i++) {
+            if (!jwp.isInPresentationForm() || !jwp.isWithheld(i)) signedPayloadCount++;
+        }
 
         // Calculate the expected length of the proof in bytes.
-        final int signatureCount = signedPayloads.size() + (jwp.isInPresentationForm() ? 2 : 1);
+        final int signatureCount = signedPayloadCount + (jwp.isInPresentationForm() ? 2 : 1);
         final int signatureSize = jwp.proof.length / signatureCount;
 
         // Bail if the proof value has an impossible length
         if (jwp.proof.length % signatureCount != 0)
-            throw new InvalidProofException(
+            return VerificationResult.invalid(
                     format("The length of this JWP's proof value must be evenly divisible by %d",
                             signatureCount));
 
@@ -78,49 +230,126 @@ public final class SingleUseJsonProofAlgorithm implements JsonProofAlgorithm {
                     Objects.requireNonNull(
                             getJSONObject(jwp.issuerHeader, "presentation_jwk")));
 
-        } catch (NullPointerException | JoseException e) {
-            throw new InvalidProofException(e);
+        } catch (NullPointerException | IllegalArgumentException | JoseException e) {
+            return VerificationResult.invalid("The issuer header's proof and presentation keys are missing or invalid", e);
         }
 
-        // Get the compact serialized form of the JWP so that we can validate the signatures in the proof. We do it
-        // this way so that we're always operating on the original payload - re-serializing json headers would not
-        // necessarily generate identical JSON to what was originally signed, and toCompactSerialization returns the
-        // json that was originally deserialized (if it exists, and we aren't operating on a freshly issued JWP)
-        final String[] jwpParts = split(jwp.serialize(), '.');
-
-        // Pull the JWS algorithm identifier out of the JPA identifier
-        final String jwsAlgorithm = jpaIdentifier.substring(3);
+        // Validate the header signatures against the headers as they appear in the compact serialized form of the JWP.
+        // We do it this way so that we're always operating on the original headers - re-serializing json headers would
+        // not necessarily generate identical JSON to what was originally signed, and the compact form holds the json
+        // that was originally deserialized (if it exists, and we aren't operating on a freshly issued JWP)
 
         // Keep the index of the current signature
         int signatureIndex = 0;
 
         // Verify the issuer header's signature
+        if (hasDeadline && expired(deadline))
+            return VerificationResult.rejected(DEADLINE_PASSED);
         if (!JoseUtils.verify(
                 jwsAlgorithm,
-                this.issuerKey,
-                Base64Utils.decodeAsString(jwpParts[0]), extractSignatureFromProof(jwp.proof, signatureSize, signatureIndex)
+                issuerKey,
+                jwp.getIssuerHeaderJson(), extractSignatureFromProof(jwp.proof, signatureSize, signatureIndex)
         ))
-            throw new InvalidProofException("The issuer header was signed incorrectly; this JWP is invalid.");
+            return VerificationResult.invalid("The issuer header was signed incorrectly; this JWP is invalid.");
 
         // Verify the presentation header if it exists
+        if (hasDeadline && expired(deadline))
+            return VerificationResult.rejected(DEADLINE_PASSED);
         if (jwp.isInPresentationForm() && !JoseUtils.verify(
                 jwsAlgorithm,
                 presentationKey,
-                Base64Utils.decodeAsString(jwpParts[1]), extractSignatureFromProof(jwp.proof, signatureSize, ++signatureIndex)
+                jwp.getPresentationHeaderJson(), extractSignatureFromProof(jwp.proof, signatureSize, ++signatureIndex)
         ))
-            throw new InvalidProofException("The presentation header was signed incorrectly; this JWP is invalid.");
+            return VerificationResult.invalid("The presentation header was signed incorrectly; this JWP is invalid.");
+
+        // Everything the payload signatures need has checked out
+        payloadSignatures.jwp = jwp;
+        payloadSignatures.jwsAlgorithm = jwsAlgorithm;
+        payloadSignatures.ephemeralKey = ephemeralKey;
+        payloadSignatures.signatureSize = signatureSize;
+        payloadSignatures.signatureIndexes = new int[jwp.payloads.size()];
+        for (int i = 0; i < jwp.payloads.size(); i++) {
+            payloadSignatures.signatureIndexes[i] = (jwp.isInPresentationForm() && jwp.isWithheld(i))
+                    ? -1
+                    : ++signatureIndex;
+        }
 
-        // Verify the payload signatures
-        for (Object payload : signedPayloads) {
-            if (!JoseUtils.verify(
+        return VerificationResult.valid();
+    }
+
+    /**
+     * @return the JWS algorithm JWPs signed with an issuer key must use: the one this instance was configured with, or
+     * for instances created with a key ring, the one the key is for
+     */
+    private String expectedJwsAlgorithm(PublicJsonWebKey issuerKey) {
+        return (null != jwsAlgorithmIdentifier || null == issuerKey)
+                ? jwsAlgorithmIdentifier
+                : jwsAlgorithmFor(issuerKey);
+    }
+
+    /**
+     * Checks the payload signatures of a JWP whose headers have been verified.
+     */
+    private static final class PayloadSignatures {
+
+        JsonWebProof jwp;
+        String jwsAlgorithm;
+        PublicJsonWebKey ephemeralKey;
+        int signatureSize;
+        int[] signatureIndexes;
+
+        boolean isSigned(int payloadIndex) {
+            return signatureIndexes[payloadIndex] >= 0;
+        }
+
+        boolean verify(int payloadIndex) {
+            // Verify the payload's bytes as they came over the wire; re-encoding the decoded value can differ
+            return JoseUtils.verify(
                     jwsAlgorithm,
                     ephemeralKey,
-                    javaTypeToJsonValue(payload), extractSignatureFromProof(jwp.proof, signatureSize, ++signatureIndex)
-            ))
-                throw new InvalidProofException("A payload was signed incorrectly; this JWP is invalid.");
+                    jwp.getPayloadBytes(payloadIndex),
+                    extractSignatureFromProof(jwp.proof, signatureSize, signatureIndexes[payloadIndex]));
         }
+    }
 
-        // The JWP's proof is valid!
+    /**
+     * Initializes the JWS algorithm this instance uses (every algorithm in the key ring, for instances created with
+     * one) and runs the synthetic cycles with throwaway keys, which warms up the same code and cryptography without
+     * ever signing anything with this instance's keys.
+     */
+    @Override
+    public void warmUp(int cycles) {
+
+        if (cycles < 0)
+            throw new IllegalArgumentException("cycles cannot be negative");
+
+        final Set<String> jwsAlgorithms = new TreeSet<>();
+        if (null != issuerKeys) {
+            for (String kid : issuerKeys.getKeyIds()) {
+                final PublicJsonWebKey key = issuerKeys.get(kid);
+                final String jwsAlgorithm = (null == key) ? null : jwsAlgorithmFor(key);
+                if (null != jwsAlgorithm)
+                    jwsAlgorithms.add(jwsAlgorithm);
+            }
+        } else {
+            jwsAlgorithms.add(jwsAlgorithmIdentifier);
+        }
+
+        for (String jwsAlgorithm : jwsAlgorithms) {
+
+            // Keys for algorithms SU doesn't support can't verify anything, so there's nothing to warm up for them
+            try {
+                resolveJwsAlgorithm(jwsAlgorithm);
+            } catch (IllegalStateException e) {
+                continue;
+            }
+
+            JoseUtils.warmUp(jwsAlgorithm);
+
+            WarmUpUtils.runSyntheticCycles(new SingleUseJsonProofAlgorithm(jwsAlgorithm,
+                    generateKeyWithJwsAlgorithm(jwsAlgorithm), generateKeyWithJwsAlgorithm(jwsAlgorithm),
+                    compressPayloads), cycles);
+        }
     }
 
     public JsonWebProof issue(Object... payloads) {
@@ -128,17 +357,9 @@ public final class SingleUseJsonProofAlgorithm implements JsonProofAlgorithm {
         if (null == payloads || payloads.length < 1)
             throw new JsonWebProofException("Unable to issue JWP: payloads required");
 
-        // Resolve the JWS algorithm from the JPA alg in the issuer header.
-        JsonWebSignatureAlgorithm algorithm = resolveJwsAlgorithm(jwsAlgorithmIdentifier);
-
-        // Generate an ephemeral key using the algorithm
-        PublicJsonWebKey ephemeralKey = generateKeyWithJwsAlgorithm(algorithm);
-
-        // Build the issuer header
-        Map<String, Object> issuerHeader = Map.of(
-                "alg", format("SU-%s", jwsAlgorithmIdentifier),
-                "proof_jwk", ephemeralKey.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY),
-                "presentation_jwk", this.presentationKey.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY));
+        // Generate an ephemeral key and build the issuer header around it
+        PublicJsonWebKey ephemeralKey = generateEphemeralKey();
+        Map<String, Object> issuerHeader = buildIssuerHeader(ephemeralKey);
 
         try {
             // Prepare to start building the proof
@@ -147,19 +368,69 @@ public final class SingleUseJsonProofAlgorithm implements JsonProofAlgorithm {
             // Sign the issuer header with the issuer signing key; append signature to the proof.
             proof.write(sign(jwsAlgorithmIdentifier, this.issuerKey, serialize(issuerHeader)));
 
-            // Sign each payload's string form with the ephemeral key and append each signature to the proof.
-            for (Object payload : payloads) {
-                proof.write(sign(jwsAlgorithmIdentifier, ephemeralKey, javaTypeToJsonValue(payload)));
+            // Sign each payload as it will appear on the wire with the ephemeral key and append each signature to the
+            // proof.
+            final List<Object> issuedPayloads = JsonWebProof.issuedPayloads(compressPayloads, payloads);
+            for (int i = 0; i < issuedPayloads.size(); i++) {
+                proof.write(sign(jwsAlgorithmIdentifier, ephemeralKey, JsonWebProof.payloadBytes(issuedPayloads, i)));
             }
 
             // Return a new JWP.
-            return new JsonWebProof(issuerHeader, null, List.of(payloads), proof.toByteArray());
+            return new JsonWebProof(issuerHeader, null, issuedPayloads, proof.toByteArray());
 
         } catch (IOException e) {
             throw new JsonWebProofException("Unable to issue JWP", e);
         }
     }
 
+    /**
+     * Start issuing a JWP whose payloads aren't all available yet. The issuer header is written to the sink
+     * immediately, each payload is written as soon as it's appended and signed in the background on the signer, and
+     * the proof is written when the issuance is finished. See {@link StreamingIssuance}.
+     *
+     * @param sink   where the compact serialized JWP is written
+     * @param signer runs the signing of each payload, overlapping it with fetching the next one
+     * @return the in-progress issuance
+     * @throws IOException if the issuer header can't be written to the sink
+     */
+    public StreamingIssuance beginIssuance(Appendable sink, Executor signer) throws IOException {
+
+        if (null == sink)
+            throw new IllegalArgumentException("sink cannot be null");
+        else if (null == signer)
+            throw new IllegalArgumentException("signer cannot be null");
+
+        PublicJsonWebKey ephemeralKey = generateEphemeralKey();
+        String issuerHeaderJson = serialize(buildIssuerHeader(ephemeralKey));
+
+        return new StreamingIssuance(jwsAlgorithmIdentifier, this.issuerKey, ephemeralKey, issuerHeaderJson,
+                compressPayloads, sink, signer);
+    }
+
+    private PublicJsonWebKey generateEphemeralKey() {
+
+        if (null == this.issuerKey || null == this.issuerKey.getPrivateKey())
+            throw new IllegalStateException("The JPA was not configured with the issuer private key");
+
+        // Resolve the JWS algorithm from the JPA alg in the issuer header, and generate an ephemeral key using it.
+        JsonWebSignatureAlgorithm algorithm = resolveJwsAlgorithm(jwsAlgorithmIdentifier);
+        return generateKeyWithJwsAlgorithm(algorithm);
+    }
+
+    private Map<String, Object> buildIssuerHeader(PublicJsonWebKey ephemeralKey) {
+
+        // Build the issuer header, naming the issuer key if it has an ID so verifiers can find it in a key ring
+        Map<String, Object> issuerHeader = new LinkedHashMap<>();
+        issuerHeader.put("alg", format("SU-%s", jwsAlgorithmIdentifier));
+        if (null != this.issuerKey.getKeyId())
+            issuerHeader.put("kid", this.issuerKey.getKeyId());
+        issuerHeader.put("proof_jwk", ephemeralKey.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY));
+        issuerHeader.put("presentation_jwk", this.presentationKey.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY));
+        if (compressPayloads)
+            JsonWebProof.putCompressionHeader(issuerHeader);
+        return Collections.unmodifiableMap(issuerHeader);
+    }
+
     public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
 
         if (null == issuedFormJwp)
@@ -175,24 +446,15 @@ public final class SingleUseJsonProofAlgorithm implements JsonProofAlgorithm {
         else if (null == this.presentationKey || null == this.presentationKey.getPrivateKey())
             throw new IllegalStateException("The JPA was not configured with the presentation private key");
 
-        List<Object> originalPayloads = issuedFormJwp.getPayloads();
-        List<Object> sparsePayloads = new ArrayList<>();
-
-        // Build a sparse list of payloads
-        for (int i = 0; i < originalPayloads.size(); i++) {
-            int finalI = i;
-            sparsePayloads.add(
-                    Arrays.stream(includePayloadIndexes).anyMatch(value -> (value == finalI))
-                            ? originalPayloads.get(i)
-                            : null);
-        }
+        // Work out which payloads to disclose
+        final boolean[] disclosed = ArrayUtils.indexMask(issuedFormJwp.payloads.size(), includePayloadIndexes);
 
         // Build a presentation header with a random nonce
         Map<String, Object> presentationHeader = Map.of("nonce", UUID.randomUUID().toString());
         String presentationHeaderJson = JsonUtils.serialize(presentationHeader);
 
         // Calculate the expected length of the proof in bytes.
-        final int signatureCount = sparsePayloads.size() + 1;
+        final int signatureCount = disclosed.length + 1;
         final int signatureSize = issuedFormJwp.proof.length / signatureCount;
 
         // Build the presentation proof using signatures from the issued form
@@ -207,17 +469,15 @@ public final class SingleUseJsonProofAlgorithm implements JsonProofAlgorithm {
             // Sign the presentation header and add it to the proof
             proof.write(JoseUtils.sign(jwsAlgorithmIdentifier, presentationKey, presentationHeaderJson));
 
-            // Append signatures for each non-null payload to the proof
-            for (int i = 0; i < sparsePayloads.size(); i++) {
-                if (null != sparsePayloads.get(i)) {
+            // Append signatures for each disclosed payload to the proof
+            for (int i = 0; i < disclosed.length; i++) {
+                if (disclosed[i]) {
                     proof.write(extractSignatureFromProof(issuedFormJwp.proof, signatureSize, i + 1));
                 }
             }
 
-            // Build a new compact serialized form.
-            JsonWebProof result =  new JsonWebProof(issuedFormJwp.issuerHeader, presentationHeader, sparsePayloads, proof.toByteArray());
-            result.setEncodedIssuerHeader(issuedFormJwp.getEncodedIssuerHeader());
-            return result;
+            // Splice the new compact serialized form together from the issued form's encoded segments
+            return JsonWebProof.splicePresentation(issuedFormJwp, disclosed, presentationHeader, presentationHeaderJson, proof.toByteArray());
 
         } catch (IOException e) {
             throw new JsonWebProofException("Unable to present JWP", e);
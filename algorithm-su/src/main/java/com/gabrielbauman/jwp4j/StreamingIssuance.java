@@ -0,0 +1,115 @@
+package com.gabrielbauman.jwp4j;
+
+import org.jose4j.jwk.PublicJsonWebKey;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static com.gabrielbauman.jwp4j.JoseUtils.sign;
+
+/**
+ * An issued-form SU JWP that is built one payload at a time and written to a sink as it goes, so that credentials
+ * assembled from many slow lookups don't need all their payloads in memory, and don't pay for signing after the last
+ * lookup returns. Each payload is written to the sink as soon as it's appended, and signed with the ephemeral key on
+ * the signer while the caller fetches the next one; only the signatures are kept until the proof is written by
+ * {@link #finish()}. Created by {@link SingleUseJsonProofAlgorithm#beginIssuance}.
+ * <p>
+ * Instances aren't thread-safe; append payloads from one thread. If anything fails, what has been written to the sink
+ * is not a valid JWP.
+ */
+public final class StreamingIssuance {
+
+    private final String jwsAlgorithmIdentifier;
+    private final PublicJsonWebKey ephemeralKey;
+    private final boolean compressPayloads;
+    private final Appendable sink;
+    private final Executor signer;
+    private final List<CompletableFuture<byte[]>> signatures = new ArrayList<>();
+    private boolean finished;
+
+    StreamingIssuance(String jwsAlgorithmIdentifier, PublicJsonWebKey issuerKey, PublicJsonWebKey ephemeralKey,
+                      String issuerHeaderJson, boolean compressPayloads, Appendable sink, Executor signer) throws IOException {
+
+        this.jwsAlgorithmIdentifier = jwsAlgorithmIdentifier;
+        this.ephemeralKey = ephemeralKey;
+        this.compressPayloads = compressPayloads;
+        this.sink = sink;
+        this.signer = signer;
+
+        // Sign the issuer header in the background, and write it out straight away
+        signatures.add(CompletableFuture.supplyAsync(
+                () -> sign(jwsAlgorithmIdentifier, issuerKey, issuerHeaderJson), signer));
+
+        sink.append(Base64Utils.encode(issuerHeaderJson)).append('.');
+    }
+
+    /**
+     * Write a payload to the sink and start signing it.
+     *
+     * @param payload the next payload
+     * @return this issuance
+     * @throws IOException if the payload can't be written to the sink
+     */
+    public StreamingIssuance append(Object payload) throws IOException {
+
+        if (finished)
+            throw new IllegalStateException("The issuance is already finished");
+        else if (null == payload)
+            throw new IllegalArgumentException("payload cannot be null");
+
+        // Sign and write the payload as it appears on the wire, which may be compressed
+        final byte[] bytes = JsonWebProof.payloadBytes(JsonWebProof.issuedPayloads(compressPayloads, payload), 0);
+
+        signatures.add(CompletableFuture.supplyAsync(() -> sign(jwsAlgorithmIdentifier, ephemeralKey, bytes), signer));
+
+        if (signatures.size() > 2)
+            sink.append('~');
+        sink.append(Base64Utils.encode(bytes));
+
+        return this;
+    }
+
+    /**
+     * Wait for the outstanding signatures and write the proof to the sink, completing the compact serialized JWP.
+     *
+     * @return the number of payloads in the JWP
+     * @throws IOException if the proof can't be written to the sink
+     */
+    public int finish() throws IOException {
+
+        if (finished)
+            throw new IllegalStateException("The issuance is already finished");
+        else if (signatures.size() < 2)
+            throw new JsonWebProofException("Unable to issue JWP: payloads required");
+
+        finished = true;
+
+        // Concatenate the signatures in order: the issuer header's, then one per payload
+        final byte[][] parts = new byte[signatures.size()][];
+        int length = 0;
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = signatures.get(i).join();
+                length += parts[i].length;
+            }
+        } catch (CompletionException e) {
+            throw new JsonWebProofException("Unable to issue JWP", e.getCause());
+        }
+
+        final byte[] proof = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, proof, offset, part.length);
+            offset += part.length;
+        }
+
+        sink.append('.').append(Base64Utils.encode(proof));
+
+        return parts.length - 1;
+    }
+
+}
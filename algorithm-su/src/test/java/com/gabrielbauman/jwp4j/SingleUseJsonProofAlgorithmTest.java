@@ -2,11 +2,21 @@ package com.gabrielbauman.jwp4j;
 
 import org.jose4j.jwk.PublicJsonWebKey;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.gabrielbauman.jwp4j.JoseUtils.generateKeyWithJwsAlgorithm;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.jose4j.jws.AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256;
+import static org.jose4j.jws.AlgorithmIdentifiers.EDDSA;
 
 public class SingleUseJsonProofAlgorithmTest {
 
@@ -73,4 +83,365 @@ public class SingleUseJsonProofAlgorithmTest {
 
     }
 
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_15)
+    public void testEdDsaRoundTrip() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(EDDSA);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(EDDSA);
+
+        JsonProofAlgorithm algorithm =
+                new SingleUseJsonProofAlgorithm(
+                        EDDSA,
+                        issuerKey,
+                        holderKey);
+
+        JsonWebProof proof = algorithm.issue("Gabriel", "Bauman");
+
+        assertThat(proof.issuerHeader.get("alg"))
+                .isEqualTo("SU-EdDSA");
+        assertThat(proof.proof)
+                .hasSize(192);
+
+        // The ephemeral and presentation keys have to survive a trip through the serialized issuer header
+        JsonWebProof deserialized = JsonWebProof.parse(algorithm, proof.serialize());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(deserialized));
+
+        JsonWebProof presentation = algorithm.derive(deserialized, 0);
+        assertThat(presentation.proof)
+                .hasSize(192);
+        assertThat(presentation.getPayloads())
+                .containsExactly("Gabriel", null);
+
+        assertThatNoException().isThrownBy(() -> algorithm.verify(presentation));
+    }
+
+    @Test
+    public void testIssuerKeyRing() {
+
+        PublicJsonWebKey oldIssuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey newIssuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        oldIssuerKey.setKeyId("old");
+        newIssuerKey.setKeyId("new");
+
+        JsonWebProof oldProof = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, oldIssuerKey, holderKey)
+                .issue("Gabriel", "Bauman");
+        JsonWebProof newProof = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, newIssuerKey, holderKey)
+                .issue("Gabriel", "Bauman");
+
+        assertThat(oldProof.issuerHeader)
+                .containsEntry("kid", "old");
+
+        IssuerKeyRing keyRing = new IssuerKeyRing(List.of(oldIssuerKey));
+        JsonProofAlgorithm verifier = new SingleUseJsonProofAlgorithm(keyRing);
+
+        assertThatNoException().isThrownBy(() -> verifier.verify(JsonWebProof.parse(verifier, oldProof.serialize())));
+        assertThatThrownBy(() -> verifier.verify(newProof))
+                .isInstanceOf(UnverifiableProofException.class);
+
+        keyRing.rotate(List.of(newIssuerKey), List.of("old"));
+
+        assertThat(keyRing.getKeyIds())
+                .containsExactly("new");
+        assertThatNoException().isThrownBy(() -> verifier.verify(newProof));
+        assertThatThrownBy(() -> verifier.verify(oldProof))
+                .isInstanceOf(UnverifiableProofException.class);
+    }
+
+    @Test
+    public void testNonThrowingVerification() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey otherKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+        JsonProofAlgorithm impostor = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, otherKey, holderKey);
+
+        String presented = algorithm.derive(algorithm.issue("Gabriel", "Bauman"), 1).serialize();
+
+        VerificationResult valid = JsonWebProof.verify(algorithm, presented);
+        assertThat(valid.isValid()).isTrue();
+        assertThat(valid.getProof().getPayloads()).containsExactly(null, "Bauman");
+
+        VerificationResult invalid = JsonWebProof.verify(algorithm, impostor.issue("Gabriel", "Bauman").serialize());
+        assertThat(invalid.getCode()).isEqualTo(VerificationResult.Code.INVALID);
+        assertThat(invalid.getProof()).isNotNull();
+
+        VerificationResult malformed = JsonWebProof.verify(algorithm, presented.substring(1));
+        assertThat(malformed.getCode()).isEqualTo(VerificationResult.Code.MALFORMED);
+        assertThat(malformed.getProof()).isNull();
+
+        // The throwing path doesn't pay for stack traces
+        assertThatThrownBy(() -> algorithm.verify(JsonWebProof.parse(impostor, impostor.issue("Gabriel").serialize())))
+                .isInstanceOf(InvalidProofException.class)
+                .satisfies(e -> assertThat(e.getStackTrace()).isEmpty());
+    }
+
+    @Test
+    public void testSwappedAlgsAreInvalid() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        issuerKey.setKeyId("issuer");
+
+        JsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+        JsonProofAlgorithm keyRingVerifier = new SingleUseJsonProofAlgorithm(new IssuerKeyRing(List.of(issuerKey)));
+
+        String issued = algorithm.issue("Gabriel", "Bauman").serialize();
+        String presented = algorithm.derive(JsonWebProof.parse(algorithm, issued), 1).serialize();
+
+        for (String alg : List.of("SU-RS256", "SU-HS256", "SU-none", "SU-XYZ")) {
+            for (JsonProofAlgorithm verifier : List.of(algorithm, keyRingVerifier)) {
+                for (String swapped : List.of(withAlg(issued, alg), withAlg(presented, alg))) {
+                    VerificationResult result = JsonWebProof.verify(verifier, swapped);
+                    assertThat(result.getCode())
+                            .isEqualTo(VerificationResult.Code.INVALID);
+                    // Caught before any signature is checked, including with a key chosen by kid
+                    assertThat(result.getMessage())
+                            .contains("doesn't match the issuer key's algorithm");
+                }
+            }
+        }
+
+        // A signature can't have been made with an algorithm that doesn't fit the key
+        assertThat(JoseUtils.verify("RS256", issuerKey, "Gabriel", new byte[256]))
+                .isFalse();
+    }
+
+    private static String withAlg(String compactForm, String alg) {
+        final int dot = compactForm.indexOf('.');
+        final String issuerHeader = Base64Utils.decodeAsString(compactForm.substring(0, dot))
+                .replaceFirst("\"alg\"\\s*:\\s*\"[^\"]*\"", "\"alg\":\"" + alg + "\"");
+        return Base64Utils.encode(issuerHeader) + compactForm.substring(dot);
+    }
+
+    @Test
+    public void testDeadlinesAndCostEstimates() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+
+        JsonWebProof issued = algorithm.issue("Gabriel", "Bauman", 42);
+        JsonWebProof presented = algorithm.derive(issued, 1);
+
+        assertThat(algorithm.validate(issued, System.nanoTime() + 60_000_000_000L).isValid())
+                .isTrue();
+        assertThat(algorithm.validate(issued, System.nanoTime()).getCode())
+                .isEqualTo(VerificationResult.Code.REJECTED);
+
+        // One signature per header and disclosed payload, weighted for ES256
+        assertThat(algorithm.estimateVerificationCost(issued))
+                .isEqualTo(4 * JoseUtils.verificationCost(ECDSA_USING_P256_CURVE_AND_SHA256));
+        assertThat(algorithm.estimateVerificationCost(presented))
+                .isEqualTo(3 * JoseUtils.verificationCost(ECDSA_USING_P256_CURVE_AND_SHA256));
+    }
+
+    @Test
+    public void testPartialVerification() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        SingleUseJsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+
+        JsonWebProof issued = algorithm.issue("zero", "one", "two", "three", "four", "five");
+        String presented = algorithm.derive(issued, 1, 3, 5).serialize();
+
+        PartiallyVerifiedProof view = algorithm.verifyPartially(JsonWebProof.parse(algorithm, presented), 3);
+        assertThat(view.getPayload(3)).isEqualTo("three");
+        assertThat(view.isVerified(1)).isFalse();
+        assertThat(view.isDisclosed(1)).isTrue();
+        assertThatThrownBy(() -> view.getPayload(1))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> view.verify(0))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(view.verify(1).getPayload(1)).isEqualTo("one");
+
+        // Tamper with a payload that isn't read; only verifying it notices
+        String[] parts = presented.split("\\.");
+        String[] payloads = parts[2].split("~", -1);
+        payloads[5] = Base64Utils.encode("\"FIVE\"");
+        parts[2] = String.join("~", payloads);
+        JsonWebProof tampered = JsonWebProof.parse(algorithm, String.join(".", parts));
+
+        PartiallyVerifiedProof tamperedView = algorithm.verifyPartially(tampered, 1, 3);
+        assertThatThrownBy(() -> tamperedView.verify(5))
+                .isInstanceOf(InvalidProofException.class);
+        assertThatThrownBy(() -> tamperedView.getPayload(5))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> algorithm.verify(tampered))
+                .isInstanceOf(InvalidProofException.class);
+
+        // The headers are always verified
+        SingleUseJsonProofAlgorithm impostor = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256,
+                generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256), holderKey);
+        assertThatThrownBy(() -> impostor.verifyPartially(JsonWebProof.parse(impostor, presented)))
+                .isInstanceOf(InvalidProofException.class);
+    }
+
+    @Test
+    public void testCompressedPayloads() throws Exception {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        SingleUseJsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey, true);
+
+        String large = "claim ".repeat(1000);
+        String compactForm = algorithm.issue(large, 42, true).serialize();
+        assertThat(compactForm.length()).isLessThan(large.length() / 5);
+
+        // Verification checks signatures over the compressed bytes without decompressing anything
+        JsonWebProof issued = JsonWebProof.parse(algorithm, compactForm);
+        assertThat(issued.issuerHeader).containsEntry("zip", "DEF");
+        assertThatNoException().isThrownBy(() -> algorithm.verify(issued));
+
+        JsonWebProof presented = JsonWebProof.parse(algorithm, algorithm.derive(issued, 0, 2).serialize());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(presented));
+        assertThat(algorithm.verifyPartially(presented, 2).getPayload(2)).isEqualTo(true);
+        assertThat(presented.getPayloads()).containsExactly(large, null, true);
+
+        // Streamed issuance compresses the same way
+        StringBuilder sink = new StringBuilder();
+        algorithm.beginIssuance(sink, Runnable::run).append(large).finish();
+        JsonWebProof streamed = JsonWebProof.parse(algorithm, sink.toString());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(streamed));
+        assertThat(streamed.getPayloads()).containsExactly(large);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        issuerKey.setKeyId("issuer");
+
+        // Issuers, verifiers holding only public keys, and key ring verifiers can all warm up
+        SingleUseJsonProofAlgorithm issuer = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey, true);
+        SingleUseJsonProofAlgorithm verifier = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256,
+                PublicJsonWebKey.Factory.newPublicJwk(issuerKey.getPublicKey()), null);
+        SingleUseJsonProofAlgorithm keyRingVerifier = new SingleUseJsonProofAlgorithm(
+                IssuerKeyRing.fromJwks("{\"keys\":[" + issuerKey.toJson() + "]}"));
+
+        assertThatNoException().isThrownBy(() -> issuer.warmUp(3));
+        assertThatNoException().isThrownBy(() -> verifier.warmUp(1));
+        assertThatNoException().isThrownBy(() -> keyRingVerifier.warmUp(0));
+        assertThatThrownBy(() -> issuer.warmUp(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // Warming up doesn't change what the algorithm does
+        assertThatNoException().isThrownBy(() -> verifier.verify(issuer.derive(issuer.issue("Gabriel", "Bauman"), 1)));
+
+        assertThat(JoseUtils.jwsAlgorithmFor(issuerKey))
+                .isEqualTo(ECDSA_USING_P256_CURVE_AND_SHA256);
+        assertThat(JoseUtils.resolveJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256))
+                .isSameAs(JoseUtils.resolveJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256));
+    }
+
+    @Test
+    public void testDeriveSplicesIssuedSegments() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+
+        String issued = algorithm.issue("Gabriel", 42, true).serialize();
+        JsonWebProof presented = algorithm.derive(JsonWebProof.parse(algorithm, issued), 0, 2);
+
+        String[] issuedParts = issued.split("\\.");
+        String[] presentedParts = presented.serialize().split("\\.");
+        String[] issuedPayloads = issuedParts[1].split("~", -1);
+        String[] presentedPayloads = presentedParts[2].split("~", -1);
+
+        // The issuer header and disclosed payloads are copied verbatim; the withheld payload is an empty segment
+        assertThat(presentedParts[0]).isEqualTo(issuedParts[0]);
+        assertThat(presentedPayloads).containsExactly(issuedPayloads[0], "", issuedPayloads[2]);
+        assertThat(presented.getPayloads()).containsExactly("Gabriel", null, true);
+
+        assertThatNoException().isThrownBy(() -> algorithm.verify(presented));
+        assertThatNoException().isThrownBy(() -> algorithm.verify(JsonWebProof.parse(algorithm, presented.serialize())));
+    }
+
+    @Test
+    public void testPayloadsThatDecodeLossilyStillVerify() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+
+        // Neither payload decodes to a value that re-encodes to the same JSON, so signatures must cover the wire bytes
+        JsonWebProof issued = JsonWebProof.parse(algorithm, algorithm.issue(1.5, "Gabriel", Map.of("age", 42)).serialize());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(issued));
+
+        JsonWebProof presented = JsonWebProof.parse(algorithm, algorithm.derive(issued, 0, 2).serialize());
+        assertThatNoException().isThrownBy(() -> algorithm.verify(presented));
+    }
+
+    @Test
+    public void testStreamingIssuance() throws Exception {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        SingleUseJsonProofAlgorithm algorithm = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+        ExecutorService signer = Executors.newFixedThreadPool(4);
+
+        try {
+            StringBuilder sink = new StringBuilder();
+            StreamingIssuance issuance = algorithm.beginIssuance(sink, signer);
+
+            List<Object> payloads = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Object payload = (i % 2 == 0) ? "payload-" + i : i;
+                payloads.add(payload);
+                issuance.append(payload);
+            }
+
+            assertThat(issuance.finish()).isEqualTo(20);
+            assertThatThrownBy(() -> issuance.append("late"))
+                    .isInstanceOf(IllegalStateException.class);
+
+            JsonWebProof issued = JsonWebProof.parse(algorithm, sink.toString());
+            assertThat(issued.getPayloads()).containsExactlyElementsOf(payloads);
+            assertThatNoException().isThrownBy(() -> algorithm.verify(issued));
+            assertThatNoException().isThrownBy(() -> algorithm.verify(algorithm.derive(issued, 3, 7)));
+
+            assertThatThrownBy(() -> algorithm.beginIssuance(new StringBuilder(), signer).finish())
+                    .isInstanceOf(JsonWebProofException.class);
+        } finally {
+            signer.shutdown();
+        }
+    }
+
+    @Test
+    public void testImpossibleProofLengthIsRejectedWhileParsing() {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm =
+                new SingleUseJsonProofAlgorithm(
+                        ECDSA_USING_P256_CURVE_AND_SHA256,
+                        issuerKey,
+                        holderKey);
+
+        String issued = algorithm.issue("Gabriel", "Bauman").serialize();
+        String presented = algorithm.derive(JsonWebProof.parse(algorithm, issued), 0).serialize();
+
+        assertThatNoException().isThrownBy(() -> JsonWebProof.parse(algorithm, presented));
+
+        // Three ES256 signatures are 192 bytes; chop one signature's worth (86 characters) off the proof
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, issued.substring(0, issued.length() - 86)))
+                .isInstanceOf(InvalidProofException.class);
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, presented.substring(0, presented.length() - 86)))
+                .isInstanceOf(InvalidProofException.class);
+    }
+
 }
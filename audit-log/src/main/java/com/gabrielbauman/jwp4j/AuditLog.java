@@ -0,0 +1,652 @@
+package com.gabrielbauman.jwp4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import static java.lang.String.format;
+
+/**
+ * An {@link AuditSink} that appends every verified JWP, its verification outcome and a timestamp to an append-only log
+ * of memory-mapped segment files in a directory.
+ * <p>
+ * {@link #record} only puts the JWP on a bounded queue, so verifying threads never wait for I/O unless the writer has
+ * fallen a whole queue behind. A single background writer drains the queue in batches, appends the batch to the
+ * current segment and flushes it once (group commit), so the cost of a flush is shared by everything in the batch.
+ * Segments are preallocated to a fixed size and a new one is started when the current one is full.
+ * <p>
+ * Each record is checksummed. When the log is opened, the segments are scanned to rebuild an in-memory index by
+ * issuer header digest (the SHA-256 of the encoded issuer header, which identifies a credential) and by presentation
+ * nonce, and scanning stops at the first torn or unchecksummed record, which is where appending resumes. Only records
+ * that have been flushed are visible to lookups.
+ * <p>
+ * Segment record layout, big-endian:
+ *
+ * <pre>
+ * length (int) | crc32 of the rest (int) | timestamp (long) | outcome code (byte) | issuer header digest (32 bytes) |
+ * nonce length (short) | message length (short) | JWP length (int) | nonce (UTF-8) | message (UTF-8) | JWP (ASCII)
+ * </pre>
+ */
+public final class AuditLog implements AuditSink, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    static final int RECORD_HEADER_SIZE = 57;
+    static final int DIGEST_SIZE = 32;
+
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final int MAX_MESSAGE_LENGTH = 1024;
+    private static final int MAX_NONCE_LENGTH = 1024;
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final Object CLOSE = new Object();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final BlockingQueue<Object> queue;
+    private final Thread writer;
+
+    // Held shared while queueing and exclusively while closing, so nothing can be queued behind CLOSE
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();
+
+    // Mapped segments in order; lookups read them concurrently with the writer appending to the last one
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Positions> byIssuerHeaderDigest = new ConcurrentHashMap<>();
+    private final Map<String, Positions> byNonce = new ConcurrentHashMap<>();
+
+    // Only touched by the writer thread once the log is open
+    private FileChannel currentChannel;
+    private MappedByteBuffer current;
+    private final MessageDigest sha256 = newSha256();
+
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    public AuditLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Open the audit log in a directory, creating it if necessary.
+     *
+     * @param directory     the directory holding the segment files
+     * @param segmentSize   the size of each segment file in bytes
+     * @param queueCapacity how many records may be waiting for the writer before {@link #record} blocks
+     * @throws IOException if the directory or its segments can't be opened
+     */
+    public AuditLog(Path directory, int segmentSize, int queueCapacity) throws IOException {
+
+        if (null == directory)
+            throw new IllegalArgumentException("directory cannot be null");
+        else if (segmentSize < 4096)
+            throw new IllegalArgumentException("segmentSize must be at least 4096 bytes");
+        else if (queueCapacity < 1)
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        recover();
+
+        this.writer = new Thread(this::writeLoop, "jwp4j-audit-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a verified JWP to be appended to the log. This blocks only if the queue is full.
+     *
+     * @throws IllegalStateException if the log is closed or the writer has failed
+     */
+    @Override
+    public void record(JsonWebProof jwp, VerificationResult result, long timestamp) {
+
+        if (null == jwp || null == result)
+            throw new IllegalArgumentException("jwp and result are required");
+
+        gate.readLock().lock();
+        try {
+            ensureUsable();
+            queue.put(new Pending(jwp, result, timestamp));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing an audit record", e);
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Wait until everything recorded before this call has been written and flushed to disk.
+     *
+     * @throws IOException if the writer failed or the wait was interrupted
+     */
+    public void flush() throws IOException {
+
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        try {
+            gate.readLock().lock();
+            try {
+                ensureUsable();
+                queue.put(flushed);
+            } finally {
+                gate.readLock().unlock();
+            }
+            flushed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the audit log");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to flush the audit log", e.getCause());
+        }
+    }
+
+    /**
+     * @param issuerHeaderDigest the SHA-256 digest of an encoded issuer header; see {@link #issuerHeaderDigest}
+     * @return the flushed records for JWPs with the issuer header, oldest first
+     */
+    public List<Entry> findByIssuerHeaderDigest(byte[] issuerHeaderDigest) {
+        if (null == issuerHeaderDigest || issuerHeaderDigest.length != DIGEST_SIZE)
+            throw new IllegalArgumentException("issuerHeaderDigest must be a SHA-256 digest");
+        return read(byIssuerHeaderDigest.get(Base64Utils.encode(issuerHeaderDigest)));
+    }
+
+    /**
+     * @return the flushed records for presentations with the nonce, oldest first. Nonces longer than 1024 characters
+     * are logged and matched by their first 1024.
+     */
+    public List<Entry> findByNonce(String nonce) {
+        if (null == nonce)
+            throw new IllegalArgumentException("nonce cannot be null");
+        return read(byNonce.get(loggedNonce(nonce)));
+    }
+
+    /**
+     * @return the SHA-256 digest of the encoded issuer header of a compact serialized JWP, as indexed by the log.
+     */
+    public static byte[] issuerHeaderDigest(String compactForm) {
+        return issuerHeaderDigest(newSha256(), compactForm);
+    }
+
+    /**
+     * Stop accepting records, write and flush everything already queued, and close the segments.
+     */
+    @Override
+    public void close() throws IOException {
+
+        gate.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            queue.put(CLOSE);
+        } catch (InterruptedException e) {
+            closed = false;
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the audit log");
+        } finally {
+            gate.writeLock().unlock();
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the audit log");
+        }
+
+        if (null != currentChannel)
+            currentChannel.close();
+
+        if (null != failure)
+            throw new IOException("The audit log writer failed", failure);
+    }
+
+    private void ensureUsable() {
+        if (closed)
+            throw new IllegalStateException("The audit log is closed");
+        else if (null != failure)
+            throw new IllegalStateException("The audit log writer failed", failure);
+    }
+
+    private void writeLoop() {
+
+        final List<Object> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        final long[] positions = new long[MAX_BATCH_SIZE];
+        boolean closing = false;
+
+        while (!closing) {
+
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // Nobody interrupts the writer but close(), which queues CLOSE instead; keep going
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            try {
+                if (null != failure)
+                    throw failure;
+
+                // Append every record in the batch, then flush once for all of them
+                boolean appended = false;
+                for (int i = 0; i < batch.size(); i++) {
+                    final Object item = batch.get(i);
+                    if (item instanceof Pending) {
+                        positions[i] = append((Pending) item);
+                        appended = true;
+                    } else if (item == CLOSE) {
+                        closing = true;
+                    }
+                }
+
+                if (appended)
+                    current.force();
+
+                // Only now that the records are durable do they become visible to lookups
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.get(i) instanceof Pending)
+                        index((Pending) batch.get(i), positions[i]);
+                }
+
+                for (Object item : batch) {
+                    if (item instanceof CompletableFuture)
+                        ((CompletableFuture<?>) item).complete(null);
+                }
+
+            } catch (Throwable e) {
+                if (null == failure)
+                    failure = e;
+                for (Object item : batch) {
+                    if (item instanceof CompletableFuture)
+                        ((CompletableFuture<?>) item).completeExceptionally(e);
+                    else if (item == CLOSE)
+                        closing = true;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Append a record to the current segment, starting a new segment if it doesn't fit.
+     *
+     * @return the position of the record; the segment number in the high 32 bits and the offset in the low 32 bits
+     */
+    private long append(Pending pending) throws IOException {
+
+        final String compactForm = pending.jwp.serialize();
+        final byte[] jwpBytes = compactForm.getBytes(StandardCharsets.US_ASCII);
+        final String nonce = loggedNonce(nonceOf(pending.jwp));
+        final byte[] nonceBytes = utf8(nonce);
+        final byte[] messageBytes = utf8(truncate(pending.result.getMessage(), MAX_MESSAGE_LENGTH));
+        final byte[] digest = issuerHeaderDigest(sha256, compactForm);
+
+        pending.issuerHeaderDigest = digest;
+        pending.nonce = nonce;
+
+        final int length = RECORD_HEADER_SIZE
+                + ((null == nonceBytes) ? 0 : nonceBytes.length)
+                + ((null == messageBytes) ? 0 : messageBytes.length)
+                + jwpBytes.length;
+
+        // Leave room for the zero length that marks the end of the records
+        if (current.position() + length + 4 > current.capacity()) {
+            current.force();
+            startSegment(segments.size(), length + 4);
+        }
+
+        final int offset = current.position();
+
+        current.putInt(length)
+                .putInt(0)
+                .putLong(pending.timestamp)
+                .put((byte) pending.result.getCode().ordinal())
+                .put(digest)
+                .putShort((short) ((null == nonceBytes) ? -1 : nonceBytes.length))
+                .putShort((short) ((null == messageBytes) ? -1 : messageBytes.length))
+                .putInt(jwpBytes.length);
+        if (null != nonceBytes)
+            current.put(nonceBytes);
+        if (null != messageBytes)
+            current.put(messageBytes);
+        current.put(jwpBytes);
+
+        current.putInt(offset + 4, checksum(current, offset, length));
+
+        return ((long) (segments.size() - 1) << 32) | offset;
+    }
+
+    private void index(Pending pending, long position) {
+        byIssuerHeaderDigest.computeIfAbsent(Base64Utils.encode(pending.issuerHeaderDigest), key -> new Positions())
+                .add(position);
+        if (null != pending.nonce)
+            byNonce.computeIfAbsent(pending.nonce, key -> new Positions()).add(position);
+    }
+
+    /**
+     * Map the existing segments, rebuild the index, and find where to resume appending.
+     */
+    private void recover() throws IOException {
+
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        Collections.sort(paths);
+
+        for (int i = 0; i < paths.size(); i++) {
+            if (!paths.get(i).getFileName().toString().equals(segmentName(i)))
+                throw new IOException(format("Audit log segment %s is missing", segmentName(i)));
+        }
+
+        for (int i = 0; i < paths.size(); i++) {
+
+            final boolean last = (i == paths.size() - 1);
+
+            if (last) {
+                startSegment(i, 0);
+            } else {
+                try (FileChannel channel = FileChannel.open(paths.get(i), StandardOpenOption.READ)) {
+                    segments.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+
+            final MappedByteBuffer segment = segments.get(i);
+            final int end = scan(segment, i);
+
+            if (last) {
+                // Anything past the last good record is a torn write; clear it so it can't be mistaken for a record
+                current.position(end);
+                if (end + 4 <= current.capacity() && current.getInt(end) != 0) {
+                    for (int p = end; p < current.capacity(); p++) {
+                        current.put(p, (byte) 0);
+                    }
+                    current.force();
+                }
+            }
+        }
+
+        if (paths.isEmpty())
+            startSegment(0, 0);
+    }
+
+    /**
+     * Index the good records in a segment.
+     *
+     * @return the offset just past the last good record
+     */
+    private int scan(MappedByteBuffer segment, int segmentNumber) {
+
+        int offset = 0;
+
+        while (offset + RECORD_HEADER_SIZE <= segment.capacity()) {
+
+            final int length = segment.getInt(offset);
+
+            if (length < RECORD_HEADER_SIZE || (long) offset + length > segment.capacity()
+                    || checksum(segment, offset, length) != segment.getInt(offset + 4))
+                break;
+
+            // Only read the indexed fields: skip the length, checksum, timestamp and outcome code before the digest,
+            // and the message and JWP lengths after the nonce length
+            final ByteBuffer record = segment.duplicate();
+            record.position(offset + 17);
+            final Pending pending = new Pending(null, null, 0);
+            pending.issuerHeaderDigest = new byte[DIGEST_SIZE];
+            record.get(pending.issuerHeaderDigest);
+            final short nonceLength = record.getShort();
+            record.position(record.position() + 6);
+            pending.nonce = readString(record, nonceLength);
+            index(pending, ((long) segmentNumber << 32) | offset);
+
+            offset += length;
+        }
+
+        return offset;
+    }
+
+    private void startSegment(int number, int minimumSize) throws IOException {
+
+        if (null != currentChannel)
+            currentChannel.close();
+
+        final Path path = directory.resolve(segmentName(number));
+        final FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long size = Math.max(Math.max(segmentSize, minimumSize), channel.size());
+
+        if (size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException(format("Audit log segment %s is too large", path));
+        }
+
+        current = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        currentChannel = channel;
+        segments.add(current);
+    }
+
+    private List<Entry> read(Positions positions) {
+
+        if (null == positions)
+            return List.of();
+
+        final int size = positions.size;
+        final long[] values = positions.values;
+        final List<Entry> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(readEntry(segments.get((int) (values[i] >>> 32)), (int) values[i]));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static Entry readEntry(MappedByteBuffer segment, int offset) {
+
+        final ByteBuffer record = segment.duplicate();
+        record.position(offset + 8);
+
+        final long timestamp = record.getLong();
+        final VerificationResult.Code code = VerificationResult.Code.values()[record.get()];
+        final byte[] digest = new byte[DIGEST_SIZE];
+        record.get(digest);
+        final short nonceLength = record.getShort();
+        final short messageLength = record.getShort();
+        final byte[] jwp = new byte[record.getInt()];
+
+        final String nonce = readString(record, nonceLength);
+        final String message = readString(record, messageLength);
+        record.get(jwp);
+
+        return new Entry(timestamp, code, message, digest, nonce, new String(jwp, StandardCharsets.US_ASCII));
+    }
+
+    private static String readString(ByteBuffer buffer, short length) {
+        if (length < 0)
+            return null;
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer segment, int offset, int length) {
+        final ByteBuffer body = segment.duplicate();
+        body.position(offset + 8).limit(offset + length);
+        final CRC32 checksum = new CRC32();
+        checksum.update(body);
+        return (int) checksum.getValue();
+    }
+
+    private static String nonceOf(JsonWebProof jwp) {
+        if (!jwp.isInPresentationForm())
+            return null;
+        final Object nonce = jwp.presentationHeader.get("nonce");
+        return (nonce instanceof String) ? (String) nonce : null;
+    }
+
+    /**
+     * @return a nonce as it's logged and indexed: truncated, and with anything UTF-8 can't hold replaced the same way
+     * it is when the log is read back, so lookups and recovered indexes agree with the live index
+     */
+    private static String loggedNonce(String nonce) {
+        final byte[] bytes = utf8(truncate(nonce, MAX_NONCE_LENGTH));
+        return (null == bytes) ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the value cut to at most maxLength characters, without splitting a surrogate pair
+     */
+    private static String truncate(String value, int maxLength) {
+        if (null == value || value.length() <= maxLength)
+            return value;
+        return value.substring(0, Character.isHighSurrogate(value.charAt(maxLength - 1)) ? maxLength - 1 : maxLength);
+    }
+
+    private static byte[] utf8(String value) {
+        return (null == value) ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] issuerHeaderDigest(MessageDigest sha256, String compactForm) {
+        final int end = compactForm.indexOf('.');
+        sha256.reset();
+        return sha256.digest(compactForm.substring(0, (end < 0) ? compactForm.length() : end)
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String segmentName(int number) {
+        return format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class Pending {
+
+        final JsonWebProof jwp;
+        final VerificationResult result;
+        final long timestamp;
+
+        // Filled in by the writer
+        byte[] issuerHeaderDigest;
+        String nonce;
+
+        Pending(JsonWebProof jwp, VerificationResult result, long timestamp) {
+            this.jwp = jwp;
+            this.result = result;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * The positions of the records with one index key, oldest first. Only the writer adds to it (or recovery, before
+     * the writer starts); readers take size first, which guarantees the array they read next holds that many.
+     */
+    private static final class Positions {
+
+        long[] values = new long[1];
+        volatile int size;
+
+        void add(long position) {
+            final int n = size;
+            if (n == values.length)
+                values = Arrays.copyOf(values, n * 2);
+            values[n] = position;
+            size = n + 1;
+        }
+    }
+
+    /**
+     * A record read back from the log.
+     */
+    public static final class Entry {
+
+        private final long timestamp;
+        private final VerificationResult.Code code;
+        private final String message;
+        private final byte[] issuerHeaderDigest;
+        private final String nonce;
+        private final String compactForm;
+
+        Entry(long timestamp, VerificationResult.Code code, String message, byte[] issuerHeaderDigest, String nonce, String compactForm) {
+            this.timestamp = timestamp;
+            this.code = code;
+            this.message = message;
+            this.issuerHeaderDigest = issuerHeaderDigest;
+            this.nonce = nonce;
+            this.compactForm = compactForm;
+        }
+
+        /**
+         * @return when the JWP was verified, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public VerificationResult.Code getCode() {
+            return code;
+        }
+
+        /**
+         * @return the failure message, or null if the JWP was valid
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        public byte[] getIssuerHeaderDigest() {
+            return issuerHeaderDigest.clone();
+        }
+
+        /**
+         * @return the presentation header nonce, or null if the JWP had none
+         */
+        public String getNonce() {
+            return nonce;
+        }
+
+        public String getCompactForm() {
+            return compactForm;
+        }
+
+        @Override
+        public String toString() {
+            return format("%d %s %s", timestamp, code, compactForm);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuditLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRecordAndLookUp() throws Exception {
+
+        JsonWebProof first = presentation("alice", "nonce-1");
+        JsonWebProof second = presentation("alice", "nonce-2");
+        JsonWebProof other = presentation("bob", "nonce-3");
+
+        try (AuditLog log = new AuditLog(tempDir, 4096, 16)) {
+
+            log.record(first, VerificationResult.valid(), 1000);
+            log.record(second, VerificationResult.invalid("A payload was signed incorrectly"), 2000);
+            log.record(other, VerificationResult.valid(), 3000);
+            log.flush();
+
+            List<AuditLog.Entry> alice = log.findByIssuerHeaderDigest(AuditLog.issuerHeaderDigest(first.serialize()));
+            assertThat(alice).extracting(AuditLog.Entry::getCompactForm)
+                    .containsExactly(first.serialize(), second.serialize());
+            assertThat(alice.get(1).getCode()).isEqualTo(VerificationResult.Code.INVALID);
+            assertThat(alice.get(1).getMessage()).isEqualTo("A payload was signed incorrectly");
+            assertThat(alice.get(1).getTimestamp()).isEqualTo(2000);
+
+            List<AuditLog.Entry> byNonce = log.findByNonce("nonce-3");
+            assertThat(byNonce).hasSize(1);
+            assertThat(byNonce.get(0).getCompactForm()).isEqualTo(other.serialize());
+            assertThat(byNonce.get(0).getMessage()).isNull();
+
+            assertThat(log.findByNonce("unknown")).isEmpty();
+        }
+    }
+
+    @Test
+    public void testSegmentsAndRecovery() throws Exception {
+
+        List<String> recorded = new ArrayList<>();
+
+        // Small segments, so the records span several of them
+        try (AuditLog log = new AuditLog(tempDir, 4096, 64)) {
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    final int thread = t;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < 50; i++) {
+                            log.record(presentation("holder", thread + "-" + i), VerificationResult.valid(), i);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            log.flush();
+
+            for (AuditLog.Entry entry : log.findByIssuerHeaderDigest(
+                    AuditLog.issuerHeaderDigest(presentation("holder", "x").serialize()))) {
+                recorded.add(entry.getNonce());
+            }
+        }
+
+        assertThat(recorded).hasSize(200).doesNotHaveDuplicates();
+        assertThat(Files.list(tempDir).count()).isGreaterThan(1);
+
+        // Tear the last record in the last segment, as if we'd crashed part way through writing it
+        List<Path> segments = Files.list(tempDir).sorted().collect(Collectors.toList());
+        Path lastSegment = segments.get(segments.size() - 1);
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int offset = 0;
+            int lastOffset = 0;
+            ByteBuffer length = ByteBuffer.allocate(4);
+            while (true) {
+                length.clear();
+                channel.read(length, offset);
+                int recordLength = length.getInt(0);
+                if (recordLength == 0)
+                    break;
+                lastOffset = offset;
+                offset += recordLength;
+            }
+            channel.write(ByteBuffer.wrap(new byte[]{0x7f, 0x7f}), lastOffset + 20);
+        }
+
+        try (AuditLog log = new AuditLog(tempDir, 4096, 64)) {
+
+            byte[] digest = AuditLog.issuerHeaderDigest(presentation("holder", "x").serialize());
+            assertThat(log.findByIssuerHeaderDigest(digest)).hasSize(199);
+
+            // Appending resumes where the good records end
+            log.record(presentation("holder", "after-recovery"), VerificationResult.valid(), 0);
+            log.flush();
+            assertThat(log.findByNonce("after-recovery")).hasSize(1);
+        }
+
+        try (AuditLog log = new AuditLog(tempDir, 4096, 64)) {
+            assertThat(log.findByNonce("after-recovery")).hasSize(1);
+        }
+    }
+
+    @Test
+    public void testLongNoncesCanBeFound() throws Exception {
+
+        // 1023 characters and then an emoji, whose surrogate pair straddles the truncation point
+        String nonce = "n".repeat(1023) + "\uD83D\uDE00" + "tail";
+        JsonWebProof jwp = presentation("alice", nonce);
+
+        try (AuditLog log = new AuditLog(tempDir, 64 * 1024, 16)) {
+            log.record(jwp, VerificationResult.valid(), 1000);
+            log.flush();
+
+            assertThat(log.findByNonce(nonce)).hasSize(1);
+            assertThat(log.findByNonce(nonce).get(0).getNonce()).isEqualTo("n".repeat(1023));
+        }
+
+        try (AuditLog log = new AuditLog(tempDir, 64 * 1024, 16)) {
+            assertThat(log.findByNonce(nonce)).hasSize(1);
+        }
+    }
+
+    @Test
+    public void testRecordsAcceptedWhileClosingAreKept() throws Exception {
+
+        List<String> accepted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(4);
+
+        AuditLog log = new AuditLog(tempDir, 4096, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    started.countDown();
+                    for (int i = 0; ; i++) {
+                        String nonce = thread + "-" + i;
+                        try {
+                            log.record(presentation("holder", nonce), VerificationResult.valid(), i);
+                        } catch (IllegalStateException e) {
+                            return;
+                        }
+                        accepted.add(nonce);
+                    }
+                }));
+            }
+
+            started.await();
+            log.close();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Every record the log accepted before it closed was written
+        try (AuditLog reopened = new AuditLog(tempDir, 4096, 4)) {
+            assertThat(accepted).isNotEmpty();
+            for (String nonce : accepted) {
+                assertThat(reopened.findByNonce(nonce)).hasSize(1);
+            }
+        }
+    }
+
+    private static JsonWebProof presentation(String holder, String nonce) {
+        return new JsonWebProof(
+                Map.of("alg", "DUMMY", "sub", holder),
+                Map.of("nonce", nonce),
+                List.of(1, "two"),
+                new byte[]{1, 2, 3, 4});
+    }
+
+}
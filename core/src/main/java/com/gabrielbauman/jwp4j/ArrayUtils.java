@@ -43,4 +43,15 @@ interface ArrayUtils {
         return false;
     }
 
+    /**
+     * @return an array of the given length that is true at each of the given indexes. Indexes out of range are ignored.
+     */
+    static boolean[] indexMask(int length, int... indexes) {
+        boolean[] result = new boolean[length];
+        for (int index : indexes) {
+            if (index >= 0 && index < length) result[index] = true;
+        }
+        return result;
+    }
+
 }
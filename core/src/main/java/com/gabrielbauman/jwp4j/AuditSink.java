@@ -0,0 +1,18 @@
+package com.gabrielbauman.jwp4j;
+
+/**
+ * Receives every JWP verified by an {@link AuditingJsonProofAlgorithm}, along with the outcome. Implementations are
+ * called on the verifying thread, so they should hand the work off rather than doing I/O inline.
+ */
+public interface AuditSink {
+
+    /**
+     * Record the outcome of verifying a JWP.
+     *
+     * @param jwp       the verified JWP
+     * @param result    the outcome of verification
+     * @param timestamp when the JWP was verified, in milliseconds since the epoch
+     */
+    void record(JsonWebProof jwp, VerificationResult result, long timestamp);
+
+}
@@ -0,0 +1,92 @@
+package com.gabrielbauman.jwp4j;
+
+/**
+ * A {@link JsonProofAlgorithm} that reports the outcome of every verification made through it to an
+ * {@link AuditSink}, then behaves exactly like the algorithm it wraps. Issuing and deriving aren't audited.
+ */
+public final class AuditingJsonProofAlgorithm implements JsonProofAlgorithm {
+
+    private final JsonProofAlgorithm delegate;
+    private final AuditSink sink;
+
+    public AuditingJsonProofAlgorithm(JsonProofAlgorithm delegate, AuditSink sink) {
+        if (null == delegate)
+            throw new IllegalArgumentException("delegate cannot be null");
+        else if (null == sink)
+            throw new IllegalArgumentException("sink cannot be null");
+        this.delegate = delegate;
+        this.sink = sink;
+    }
+
+    @Override
+    public boolean handles(String alg) {
+        return delegate.handles(alg);
+    }
+
+    @Override
+    public boolean acceptsProofLength(String alg, boolean presentationForm, int payloadCount, int disclosedPayloadCount, int proofLength) {
+        return delegate.acceptsProofLength(alg, presentationForm, payloadCount, disclosedPayloadCount, proofLength);
+    }
+
+    @Override
+    public void verify(JsonWebProof jwp) {
+        validate(jwp).throwIfInvalid();
+    }
+
+    @Override
+    public VerificationResult validate(JsonWebProof jwp) {
+        VerificationResult result;
+        try {
+            result = delegate.validate(jwp);
+        } catch (RuntimeException e) {
+            recordFailure(jwp, e);
+            throw e;
+        }
+        sink.record(jwp, result, System.currentTimeMillis());
+        return result;
+    }
+
+    @Override
+    public VerificationResult validate(JsonWebProof jwp, long deadline) {
+        VerificationResult result;
+        try {
+            result = delegate.validate(jwp, deadline);
+        } catch (RuntimeException e) {
+            recordFailure(jwp, e);
+            throw e;
+        }
+        sink.record(jwp, result, System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Record a JWP the wrapped algorithm threw on as invalid; malformed and hostile JWPs are what's most worth auditing.
+     */
+    private void recordFailure(JsonWebProof jwp, RuntimeException e) {
+        sink.record(jwp, VerificationResult.invalid("Unable to verify JWP", e), System.currentTimeMillis());
+    }
+
+    @Override
+    public long estimateVerificationCost(JsonWebProof jwp) {
+        return delegate.estimateVerificationCost(jwp);
+    }
+
+    /**
+     * Warms up the wrapped algorithm directly, so synthetic verifications aren't audited.
+     */
+    @Override
+    public void warmUp(int cycles) {
+        delegate.warmUp(cycles);
+    }
+
+    @Override
+    public JsonWebProof issue(Object... payloads) {
+        return delegate.issue(payloads);
+    }
+
+    @Override
+    public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+        return delegate.derive(issuedFormJwp, includePayloadIndexes);
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.gabrielbauman.jwp4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Unpadded base64url encoding and decoding over caller-supplied ranges, so that the parts of a compact serialized JWP
+ * can be encoded and decoded in place without intermediate Strings and byte arrays. Decoding tolerates trailing
+ * padding. Use the {@link Base64Utils} methods rather than this class directly.
+ */
+final class Base64UrlCodec {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE_TABLE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private Base64UrlCodec() {
+    }
+
+    static int encodedLength(int rawLength) {
+        return (rawLength / 3) * 4 + ((rawLength % 3 == 0) ? 0 : rawLength % 3 + 1);
+    }
+
+    static int decodedLength(int unpaddedEncodedLength) {
+        int remainder = unpaddedEncodedLength % 4;
+        if (remainder == 1)
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        return (unpaddedEncodedLength / 4) * 3 + ((remainder == 0) ? 0 : remainder - 1);
+    }
+
+    static boolean isAlphabet(char c) {
+        return c < 128 && DECODE_TABLE[c] >= 0;
+    }
+
+    static int encode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+
+        checkRange(src.length, srcOffset, length);
+        checkRange(dst.length, dstOffset, encodedLength(length));
+
+        int s = srcOffset;
+        int d = dstOffset;
+        final int wholeEnd = srcOffset + (length / 3) * 3;
+
+        while (s < wholeEnd) {
+            int bits = (src[s++] & 0xff) << 16 | (src[s++] & 0xff) << 8 | (src[s++] & 0xff);
+            dst[d++] = (byte) ALPHABET[(bits >>> 18) & 0x3f];
+            dst[d++] = (byte) ALPHABET[(bits >>> 12) & 0x3f];
+            dst[d++] = (byte) ALPHABET[(bits >>> 6) & 0x3f];
+            dst[d++] = (byte) ALPHABET[bits & 0x3f];
+        }
+
+        final int remaining = srcOffset + length - s;
+        if (remaining > 0) {
+            int bits = (src[s] & 0xff) << 16 | ((remaining == 2) ? (src[s + 1] & 0xff) << 8 : 0);
+            dst[d++] = (byte) ALPHABET[(bits >>> 18) & 0x3f];
+            dst[d++] = (byte) ALPHABET[(bits >>> 12) & 0x3f];
+            if (remaining == 2)
+                dst[d++] = (byte) ALPHABET[(bits >>> 6) & 0x3f];
+        }
+
+        return d - dstOffset;
+    }
+
+    static void encode(byte[] src, int srcOffset, int length, StringBuilder dst) {
+
+        checkRange(src.length, srcOffset, length);
+
+        int s = srcOffset;
+        final int wholeEnd = srcOffset + (length / 3) * 3;
+
+        dst.ensureCapacity(dst.length() + encodedLength(length));
+
+        while (s < wholeEnd) {
+            int bits = (src[s++] & 0xff) << 16 | (src[s++] & 0xff) << 8 | (src[s++] & 0xff);
+            dst.append(ALPHABET[(bits >>> 18) & 0x3f])
+                    .append(ALPHABET[(bits >>> 12) & 0x3f])
+                    .append(ALPHABET[(bits >>> 6) & 0x3f])
+                    .append(ALPHABET[bits & 0x3f]);
+        }
+
+        final int remaining = srcOffset + length - s;
+        if (remaining > 0) {
+            int bits = (src[s] & 0xff) << 16 | ((remaining == 2) ? (src[s + 1] & 0xff) << 8 : 0);
+            dst.append(ALPHABET[(bits >>> 18) & 0x3f])
+                    .append(ALPHABET[(bits >>> 12) & 0x3f]);
+            if (remaining == 2)
+                dst.append(ALPHABET[(bits >>> 6) & 0x3f]);
+        }
+    }
+
+    static void encode(ByteBuffer src, ByteBuffer dst) {
+
+        if (dst.remaining() < encodedLength(src.remaining()))
+            throw new IllegalArgumentException("Output buffer too small");
+
+        if (src.hasArray() && dst.hasArray()) {
+            int written = encode(src.array(), src.arrayOffset() + src.position(), src.remaining(),
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.limit());
+            dst.position(dst.position() + written);
+            return;
+        }
+
+        while (src.remaining() >= 3) {
+            int bits = (src.get() & 0xff) << 16 | (src.get() & 0xff) << 8 | (src.get() & 0xff);
+            dst.put((byte) ALPHABET[(bits >>> 18) & 0x3f]);
+            dst.put((byte) ALPHABET[(bits >>> 12) & 0x3f]);
+            dst.put((byte) ALPHABET[(bits >>> 6) & 0x3f]);
+            dst.put((byte) ALPHABET[bits & 0x3f]);
+        }
+
+        final int remaining = src.remaining();
+        if (remaining > 0) {
+            int bits = (src.get() & 0xff) << 16 | ((remaining == 2) ? (src.get() & 0xff) << 8 : 0);
+            dst.put((byte) ALPHABET[(bits >>> 18) & 0x3f]);
+            dst.put((byte) ALPHABET[(bits >>> 12) & 0x3f]);
+            if (remaining == 2)
+                dst.put((byte) ALPHABET[(bits >>> 6) & 0x3f]);
+        }
+    }
+
+    static int unpaddedEnd(CharSequence src, int start, int end) {
+        int result = end;
+        while (result > start && end - result < 2 && src.charAt(result - 1) == '=') result--;
+        return result;
+    }
+
+    static int unpaddedEnd(byte[] src, int start, int end) {
+        int result = end;
+        while (result > start && end - result < 2 && src[result - 1] == '=') result--;
+        return result;
+    }
+
+    static int decode(CharSequence src, int start, int end, byte[] dst, int dstOffset) {
+
+        if (start < 0 || end > src.length() || start > end)
+            throw new IndexOutOfBoundsException();
+
+        end = unpaddedEnd(src, start, end);
+        checkRange(dst.length, dstOffset, decodedLength(end - start));
+
+        int s = start;
+        int d = dstOffset;
+        final int wholeEnd = start + ((end - start) / 4) * 4;
+
+        while (s < wholeEnd) {
+            int bits = sextet(src.charAt(s++)) << 18 | sextet(src.charAt(s++)) << 12
+                    | sextet(src.charAt(s++)) << 6 | sextet(src.charAt(s++));
+            dst[d++] = (byte) (bits >>> 16);
+            dst[d++] = (byte) (bits >>> 8);
+            dst[d++] = (byte) bits;
+        }
+
+        final int remaining = end - s;
+        if (remaining > 0) {
+            int bits = sextet(src.charAt(s)) << 18 | sextet(src.charAt(s + 1)) << 12
+                    | ((remaining == 3) ? sextet(src.charAt(s + 2)) << 6 : 0);
+            dst[d++] = (byte) (bits >>> 16);
+            if (remaining == 3)
+                dst[d++] = (byte) (bits >>> 8);
+        }
+
+        return d - dstOffset;
+    }
+
+    static int decode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+
+        checkRange(src.length, srcOffset, length);
+
+        final int end = unpaddedEnd(src, srcOffset, srcOffset + length);
+        checkRange(dst.length, dstOffset, decodedLength(end - srcOffset));
+
+        int s = srcOffset;
+        int d = dstOffset;
+        final int wholeEnd = srcOffset + ((end - srcOffset) / 4) * 4;
+
+        while (s < wholeEnd) {
+            int bits = sextet(src[s++]) << 18 | sextet(src[s++]) << 12 | sextet(src[s++]) << 6 | sextet(src[s++]);
+            dst[d++] = (byte) (bits >>> 16);
+            dst[d++] = (byte) (bits >>> 8);
+            dst[d++] = (byte) bits;
+        }
+
+        final int remaining = end - s;
+        if (remaining > 0) {
+            int bits = sextet(src[s]) << 18 | sextet(src[s + 1]) << 12
+                    | ((remaining == 3) ? sextet(src[s + 2]) << 6 : 0);
+            dst[d++] = (byte) (bits >>> 16);
+            if (remaining == 3)
+                dst[d++] = (byte) (bits >>> 8);
+        }
+
+        return d - dstOffset;
+    }
+
+    static void decode(ByteBuffer src, ByteBuffer dst) {
+
+        int end = src.limit();
+        while (end > src.position() && src.limit() - end < 2 && src.get(end - 1) == '=') end--;
+
+        if (dst.remaining() < decodedLength(end - src.position()))
+            throw new IllegalArgumentException("Output buffer too small");
+
+        if (src.hasArray() && dst.hasArray()) {
+            int written = decode(src.array(), src.arrayOffset() + src.position(), src.remaining(),
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.limit());
+            dst.position(dst.position() + written);
+            return;
+        }
+
+        while (end - src.position() >= 4) {
+            int bits = sextet(src.get()) << 18 | sextet(src.get()) << 12 | sextet(src.get()) << 6 | sextet(src.get());
+            dst.put((byte) (bits >>> 16));
+            dst.put((byte) (bits >>> 8));
+            dst.put((byte) bits);
+        }
+
+        final int remaining = end - src.position();
+        if (remaining > 0) {
+            int bits = sextet(src.get()) << 18 | sextet(src.get()) << 12
+                    | ((remaining == 3) ? sextet(src.get()) << 6 : 0);
+            dst.put((byte) (bits >>> 16));
+            if (remaining == 3)
+                dst.put((byte) (bits >>> 8));
+        }
+
+        src.position(src.limit());
+    }
+
+    private static int sextet(int c) {
+        int value = (c >= 0 && c < 128) ? DECODE_TABLE[c] : -1;
+        if (value < 0)
+            throw new IllegalArgumentException("Illegal base64url character " + Integer.toHexString(c & 0xffff));
+        return value;
+    }
+
+    private static void checkRange(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length)
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + arrayLength);
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.gabrielbauman.jwp4j;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
@@ -24,4 +25,82 @@ public interface Base64Utils {
         return new String(decode(base64Url), StandardCharsets.UTF_8);
     }
 
+    /**
+     * @return the length of the unpadded base64url encoding of rawLength bytes.
+     */
+    static int encodedLength(int rawLength) {
+        return Base64UrlCodec.encodedLength(rawLength);
+    }
+
+    /**
+     * @return the number of bytes encoded by the given range of base64url text, ignoring any trailing padding.
+     */
+    static int decodedLength(CharSequence base64Url, int start, int end) {
+        return Base64UrlCodec.decodedLength(Base64UrlCodec.unpaddedEnd(base64Url, start, end) - start);
+    }
+
+    /**
+     * Encode a range of bytes into a caller-supplied array without padding.
+     *
+     * @return the number of bytes written to dst
+     */
+    static int encode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        return Base64UrlCodec.encode(src, srcOffset, length, dst, dstOffset);
+    }
+
+    /**
+     * Encode a range of bytes without padding, appending the result to a {@link StringBuilder}.
+     */
+    static void encode(byte[] src, int srcOffset, int length, StringBuilder dst) {
+        Base64UrlCodec.encode(src, srcOffset, length, dst);
+    }
+
+    /**
+     * Encode the remaining bytes of src into dst without padding, advancing the positions of both buffers.
+     */
+    static void encode(ByteBuffer src, ByteBuffer dst) {
+        Base64UrlCodec.encode(src, dst);
+    }
+
+    /**
+     * Decode a range of base64url text, such as one part of a compact serialized JWP, without copying it first.
+     */
+    static byte[] decode(CharSequence base64Url, int start, int end) {
+        byte[] result = new byte[decodedLength(base64Url, start, end)];
+        Base64UrlCodec.decode(base64Url, start, end, result, 0);
+        return result;
+    }
+
+    /**
+     * Decode a range of base64url text into a caller-supplied array.
+     *
+     * @return the number of bytes written to dst
+     */
+    static int decode(CharSequence base64Url, int start, int end, byte[] dst, int dstOffset) {
+        return Base64UrlCodec.decode(base64Url, start, end, dst, dstOffset);
+    }
+
+    /**
+     * Decode a range of base64url bytes into a caller-supplied array.
+     *
+     * @return the number of bytes written to dst
+     */
+    static int decode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        return Base64UrlCodec.decode(src, srcOffset, length, dst, dstOffset);
+    }
+
+    /**
+     * Decode the remaining base64url bytes of src into dst, advancing the positions of both buffers.
+     */
+    static void decode(ByteBuffer src, ByteBuffer dst) {
+        Base64UrlCodec.decode(src, dst);
+    }
+
+    /**
+     * Decode a range of base64url text as a UTF-8 string.
+     */
+    static String decodeAsString(CharSequence base64Url, int start, int end) {
+        return new String(decode(base64Url, start, end), StandardCharsets.UTF_8);
+    }
+
 }
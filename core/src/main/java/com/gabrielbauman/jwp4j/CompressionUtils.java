@@ -0,0 +1,76 @@
+package com.gabrielbauman.jwp4j;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.lang.String.format;
+
+interface CompressionUtils {
+
+    /**
+     * The issuer header parameter that says how a JWP's payloads are compressed.
+     */
+    String ZIP_HEADER = "zip";
+
+    /**
+     * The value of the zip header parameter for raw DEFLATE (RFC 1951), as used by JWE.
+     */
+    String DEFLATE = "DEF";
+
+    int CHUNK_SIZE = 8192;
+
+    static byte[] deflate(byte[] data) {
+
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            final ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            while (!deflater.finished()) {
+                result.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress raw DEFLATE data a chunk at a time, giving up as soon as the output grows past maxSize, so a small
+     * compressed payload can't be used to exhaust memory.
+     *
+     * @throws JsonWebProofException if the data is corrupt or truncated, or decompresses to more than maxSize bytes
+     */
+    static byte[] inflate(byte[] compressed, int maxSize) {
+
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+
+            final ByteArrayOutputStream result = new ByteArrayOutputStream(Math.min(maxSize, compressed.length * 4));
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            while (!inflater.finished()) {
+                final int inflated = inflater.inflate(chunk);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new JsonWebProofException("Compressed payload is truncated");
+                if (result.size() + inflated > maxSize)
+                    throw new JsonWebProofException(format("Compressed payload expands to more than %d bytes", maxSize));
+                result.write(chunk, 0, inflated);
+            }
+
+            if (inflater.getRemaining() > 0)
+                throw new JsonWebProofException("Compressed payload has trailing data");
+
+            return result.toByteArray();
+        } catch (DataFormatException e) {
+            throw new JsonWebProofException("Compressed payload is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.gabrielbauman.jwp4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The payloads of a JWP together with their bytes exactly as they appear on the wire. Proofs cover those bytes, so
+ * they're kept as-is rather than re-encoded from the decoded values, which wouldn't always give the same bytes back.
+ * Payloads the issuer header says are DEFLATE compressed are only decompressed and parsed the first time they're read.
+ * Withheld payloads have no bytes and read as null.
+ * <p>
+ * Decompressed values are cached using the racy single-check idiom: they're deterministic functions of the compressed
+ * bytes, and the values payloads decode to (strings, boxed numbers and booleans) are immutable, so threads that race
+ * to decompress a payload produce equal values that are safe to publish without synchronization.
+ */
+final class EncodedPayloadList extends AbstractList<Object> implements RandomAccess {
+
+    private static final Object NOT_DECOMPRESSED = new Object();
+
+    private final byte[][] encoded;
+    private final Object[] values;
+    private final int maxPayloadSize;
+
+    private EncodedPayloadList(byte[][] encoded, Object[] values, int maxPayloadSize) {
+        this.encoded = encoded;
+        this.values = values;
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    /**
+     * Wrap parsed payloads that aren't compressed, decoding them all now.
+     *
+     * @param encoded the bytes of each payload, or null for withheld payloads
+     */
+    static EncodedPayloadList decoded(byte[][] encoded) {
+
+        final Object[] values = new Object[encoded.length];
+
+        for (int i = 0; i < encoded.length; i++) {
+            if (null != encoded[i])
+                values[i] = JsonUtils.jsonValueToJavaType(new String(encoded[i], StandardCharsets.UTF_8));
+        }
+
+        return new EncodedPayloadList(encoded, values, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Wrap parsed payloads that are compressed, leaving them to be decompressed when they're read.
+     *
+     * @param compressed     the compressed bytes of each payload, or null for withheld payloads
+     * @param maxPayloadSize the size in bytes past which decompression gives up
+     */
+    static EncodedPayloadList compressed(byte[][] compressed, int maxPayloadSize) {
+
+        final Object[] values = new Object[compressed.length];
+
+        for (int i = 0; i < compressed.length; i++) {
+            values[i] = (null == compressed[i]) ? null : NOT_DECOMPRESSED;
+        }
+
+        return new EncodedPayloadList(compressed, values, maxPayloadSize);
+    }
+
+    /**
+     * Compress payloads for issuance. The payloads themselves are kept, so they never need decompressing.
+     */
+    static EncodedPayloadList compress(Object... payloads) {
+
+        final byte[][] compressed = new byte[payloads.length][];
+        final Object[] values = new Object[payloads.length];
+
+        for (int i = 0; i < payloads.length; i++) {
+            if (null == payloads[i])
+                throw new NullPointerException("payloads cannot contain null");
+            compressed[i] = CompressionUtils.deflate(JsonUtils.javaTypeToJsonValue(payloads[i]).getBytes(StandardCharsets.UTF_8));
+            values[i] = payloads[i];
+        }
+
+        return new EncodedPayloadList(compressed, values, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return a copy in which only the disclosed payloads are present, sharing encoded bytes and decoded values
+     */
+    EncodedPayloadList disclose(boolean[] disclosed) {
+
+        final byte[][] encoded = new byte[this.encoded.length][];
+        final Object[] values = new Object[this.encoded.length];
+
+        for (int i = 0; i < disclosed.length; i++) {
+            if (disclosed[i]) {
+                encoded[i] = this.encoded[i];
+                values[i] = this.values[i];
+            }
+        }
+
+        return new EncodedPayloadList(encoded, values, maxPayloadSize);
+    }
+
+    /**
+     * @return the bytes of the payload as they appear on the wire, or null if it's withheld
+     */
+    byte[] getEncodedBytes(int index) {
+        return encoded[index];
+    }
+
+    /**
+     * @throws JsonWebProofException if the payload can't be decompressed, or is larger than allowed
+     */
+    @Override
+    public Object get(int index) {
+
+        Object result = values[index];
+
+        if (result == NOT_DECOMPRESSED) {
+            final byte[] json = CompressionUtils.inflate(encoded[index], maxPayloadSize);
+            result = JsonUtils.jsonValueToJavaType(new String(json, StandardCharsets.UTF_8));
+            values[index] = result;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return encoded.length;
+    }
+
+}
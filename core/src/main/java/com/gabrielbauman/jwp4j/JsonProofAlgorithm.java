@@ -11,6 +11,23 @@ public interface JsonProofAlgorithm {
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     boolean handles(String alg);
 
+    /**
+     * Cheaply decide whether a proof of the given length could possibly be valid for a JWP with the given shape. This
+     * is called while parsing, before the proof, payloads and presentation header are decoded and before any
+     * cryptography, so that tokens that can't possibly verify are rejected early. Implementations must not reject
+     * proofs that could be valid. The default implementation accepts everything.
+     *
+     * @param alg                   the JPA identifier from the issuer header.
+     * @param presentationForm      true if the JWP has a presentation header.
+     * @param payloadCount          the number of payloads in the JWP, including withheld payloads.
+     * @param disclosedPayloadCount the number of payloads that are not withheld.
+     * @param proofLength           the decoded length of the proof value in bytes.
+     * @return false if the proof can't possibly be valid, true otherwise.
+     */
+    default boolean acceptsProofLength(String alg, boolean presentationForm, int payloadCount, int disclosedPayloadCount, int proofLength) {
+        return true;
+    }
+
     /**
      * Verify that the proof value of a {@link JsonWebProof} is valid according to the proof algorithm, taking into
      * account the JWP's form (issued or presentation).
@@ -21,6 +38,67 @@ public interface JsonProofAlgorithm {
      */
     void verify(JsonWebProof jwp);
 
+    /**
+     * Verify the proof value of a {@link JsonWebProof} like {@link #verify(JsonWebProof)}, but return failures rather
+     * than throwing them. The default implementation calls {@link #verify(JsonWebProof)} and catches what it throws;
+     * implementations that care about the cost of rejecting invalid JWPs should override this method natively and
+     * implement {@link #verify(JsonWebProof)} as {@code validate(jwp).throwIfInvalid()}.
+     *
+     * @param jwp the {@link JsonWebProof} to be validated
+     * @return a valid result, or a failure describing why the proof was rejected
+     */
+    default VerificationResult validate(JsonWebProof jwp) {
+        try {
+            verify(jwp);
+            return VerificationResult.valid();
+        } catch (JsonWebProofException e) {
+            return VerificationResult.of(e);
+        }
+    }
+
+    /**
+     * Verify the proof value of a {@link JsonWebProof} like {@link #validate(JsonWebProof)}, but give up once a
+     * deadline passes. Implementations that check several signatures should check the deadline between them and
+     * return a {@link VerificationResult.Code#REJECTED} result rather than finishing the work. The default
+     * implementation only checks the deadline before it starts.
+     *
+     * @param jwp      the {@link JsonWebProof} to be validated
+     * @param deadline the {@link System#nanoTime()} value after which to give up
+     * @return a valid result, or a failure describing why the proof was rejected or not checked
+     */
+    default VerificationResult validate(JsonWebProof jwp, long deadline) {
+        if (System.nanoTime() - deadline >= 0)
+            return VerificationResult.rejected("The deadline passed before the JWP was verified");
+        return validate(jwp);
+    }
+
+    /**
+     * Estimate the cost of verifying a {@link JsonWebProof}, for scheduling and admission control. The units are
+     * arbitrary but should be comparable between the algorithms used together; the default implementation charges
+     * one unit per payload plus one for the headers.
+     *
+     * @param jwp the {@link JsonWebProof} to be verified
+     * @return the estimated cost of verifying the JWP, at least 1
+     */
+    default long estimateVerificationCost(JsonWebProof jwp) {
+        return jwp.payloads.size() + 1L;
+    }
+
+    /**
+     * Get ready to issue, derive and verify JWPs at full speed, so the first real requests after startup don't pay for
+     * class loading, cryptographic provider initialization and cold code. Implementations should initialize the
+     * cryptography they use and then run the given number of synthetic issue, derive and verify cycles; a few hundred
+     * cycles is usually enough for the JIT compiler to have done most of its work. Warm-up doesn't change the
+     * algorithm's configuration. The default implementation does nothing.
+     *
+     * @param cycles the number of synthetic issue, derive and verify cycles to run
+     * @throws IllegalArgumentException if cycles is negative
+     */
+    default void warmUp(int cycles) {
+        if (cycles < 0)
+            throw new IllegalArgumentException("cycles cannot be negative");
+    }
+
     /**
      * Create an issued-form JWP with a valid proof.
      *
@@ -16,16 +16,7 @@ public interface JsonUtils {
     static Map<String, Object> deserialize(String jsonString) {
 
         try {
-            JSONParser parser = new JSONParser();
-            Object parsed = parser.parse(jsonString, new ContainerFactory() {
-                public List<?> creatArrayContainer() {
-                    return new ArrayList<>();
-                }
-
-                public Map<String, Object> createObjectContainer() {
-                    return new UniqueKeyLinkedHashMap();
-                }
-            });
+            Object parsed = parse(jsonString);
             if (parsed == null) {
                 throw new IllegalStateException("Parsing returned null");
             }
@@ -37,21 +28,64 @@ public interface JsonUtils {
         }
     }
 
+    /**
+     * Parse a JSON object without throwing, so that junk is cheap to reject.
+     *
+     * @return the parsed object, or null if jsonString isn't a JSON object with unique keys
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> tryDeserialize(String jsonString) {
+
+        // Most junk isn't even shaped like an object; don't pay for the parser's exceptions to find that out
+        if (!isBraced(jsonString))
+            return null;
+
+        try {
+            Object parsed = parse(jsonString);
+            return (parsed instanceof Map) ? (Map<String, Object>) parsed : null;
+        } catch (IllegalArgumentException | ParseException e) {
+            return null;
+        }
+    }
+
+    private static Object parse(String jsonString) throws ParseException {
+        JSONParser parser = new JSONParser();
+        return parser.parse(jsonString, new ContainerFactory() {
+            public List<?> creatArrayContainer() {
+                return new ArrayList<>();
+            }
+
+            public Map<String, Object> createObjectContainer() {
+                return new UniqueKeyLinkedHashMap();
+            }
+        });
+    }
+
+    private static boolean isBraced(String jsonString) {
+        int start = 0;
+        int end = jsonString.length();
+        while (start < end && Character.isWhitespace(jsonString.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(jsonString.charAt(end - 1))) end--;
+        return end - start >= 2 && jsonString.charAt(start) == '{' && jsonString.charAt(end - 1) == '}';
+    }
+
     static String serialize(Map<String, ?> map) {
         return JSONValue.toJSONString(map);
     }
 
     static Object jsonValueToJavaType(String jsonValue) {
-        if (null == jsonValue || jsonValue.equals("null")) return null;
+        // Withheld payloads are serialized as empty segments
+        if (null == jsonValue || jsonValue.isEmpty() || jsonValue.equals("null")) return null;
         if (jsonValue.equals("true")) return true;
         if (jsonValue.equals("false")) return false;
         if (jsonValue.startsWith("\"") && jsonValue.endsWith("\"")) return jsonValue.substring(1, jsonValue.length() - 1);
-        if (jsonValue.matches("^-?\\d+$")) {
+        // Longer runs of digits might not fit in a long; they're parsed as doubles instead
+        if (jsonValue.matches("^-?\\d{1,18}$")) {
             long v = Long.parseLong(jsonValue);
             if (v < Integer.MAX_VALUE && v > Integer.MIN_VALUE) return (int) v;
             return v;
         }
-        if (jsonValue.matches("^-?[\\d.]+$")) {
+        if (jsonValue.matches("^-?(\\d+\\.?\\d*|\\.\\d+)$")) {
             double v = Double.parseDouble(jsonValue);
             if (v < Float.MAX_VALUE && v > Float.MIN_VALUE) return (int) v;
             return v;
@@ -104,11 +138,26 @@ public interface JsonUtils {
         @Override
         public Object put(String key, Object value) {
             if (this.containsKey(key)) {
-                throw new IllegalArgumentException("An entry for '" + key + "' already exists. Keys must be unique.");
+                throw new DuplicateKeyException(key);
             }
             return super.put(key, value);
         }
     }
 
+    /**
+     * Thrown while parsing untrusted headers, so it doesn't pay for a stack trace.
+     */
+    class DuplicateKeyException extends IllegalArgumentException {
+
+        DuplicateKeyException(String key) {
+            super("An entry for '" + key + "' already exists. Keys must be unique.");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
 
 }
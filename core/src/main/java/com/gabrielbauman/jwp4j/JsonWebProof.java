@@ -1,12 +1,11 @@
 package com.gabrielbauman.jwp4j;
 
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.StringJoiner;
-import java.util.stream.Collectors;
 
-import static com.gabrielbauman.jwp4j.ArrayUtils.split;
 import static java.lang.String.format;
 
 /**
@@ -15,6 +14,10 @@ import static java.lang.String.format;
  * treats {@link JsonWebProof} instances as immutable and verifies their proofs at deserialization time. New
  * containers may be constructed using an initialized {@link JsonProofAlgorithm}, and proofs will be generated at
  * construction time.
+ * <p>
+ * Instances are thread-safe and may be shared and cached freely. The compact serialized form and the encoded issuer
+ * header are computed lazily using the racy single-check idiom: they are deterministic functions of the final fields,
+ * so threads that race to compute them produce equal values, and they're published through volatile fields.
  */
 public final class JsonWebProof {
 
@@ -22,136 +25,364 @@ public final class JsonWebProof {
     final Map<String, Object> presentationHeader;
     final List<Object> payloads;
     final byte[] proof;
-    String serializedForm;
 
-    private String encodedIssuerHeader;
-    private String encodedPresentationHeader;
-    private String encodedPayloads;
-    private String encodedProof;
+    private volatile String serializedForm;
+    private volatile String encodedIssuerHeader;
 
     JsonWebProof(Map<String, Object> issuerHeader, Map<String, Object> presentationHeader, List<Object> payloads, byte[] proof) {
+        this(issuerHeader, null, presentationHeader, payloads, proof);
+    }
+
+    /**
+     * @param encodedIssuerHeader the issuer header exactly as it was signed, or null to encode issuerHeader as needed.
+     */
+    JsonWebProof(Map<String, Object> issuerHeader, String encodedIssuerHeader, Map<String, Object> presentationHeader, List<Object> payloads, byte[] proof) {
         this.issuerHeader = issuerHeader;
         this.presentationHeader = presentationHeader;
-        this.payloads = payloads;
+        this.payloads = (payloads instanceof EncodedPayloadList) ? payloads : Collections.unmodifiableList(payloads);
         this.proof = proof;
         this.serializedForm = null;
-        this.encodedIssuerHeader = null;
-        this.encodedPresentationHeader = null;
-        this.encodedPayloads = null;
-        this.encodedProof = null;
+        this.encodedIssuerHeader = encodedIssuerHeader;
+    }
+
+    /**
+     * @param serializedForm the compact serialized form this JWP was parsed from.
+     */
+    private JsonWebProof(Map<String, Object> issuerHeader, Map<String, Object> presentationHeader, List<Object> payloads, byte[] proof, String serializedForm) {
+        this(issuerHeader, null, presentationHeader, payloads, proof);
+        this.serializedForm = serializedForm;
+    }
+
+    private JsonWebProof(JsonWebProof parsed) {
+        this(parsed.issuerHeader, parsed.presentationHeader, parsed.payloads, parsed.proof, parsed.serializedForm);
     }
 
     public JsonWebProof(String compactSerializedJwp, JsonProofAlgorithmResolver methodResolver) {
+        this(compactSerializedJwp, methodResolver, JsonWebProofParsePolicy.DEFAULT);
+    }
+
+    public JsonWebProof(String compactSerializedJwp, JsonProofAlgorithmResolver methodResolver, JsonWebProofParsePolicy policy) {
+        this(decodeOrThrow(compactSerializedJwp, methodResolver, policy));
+    }
 
-        // Split the compact form apart
-        String[] jwpParts = split(compactSerializedJwp, '.');
+    private static JsonWebProof decodeOrThrow(String compactSerializedJwp, JsonProofAlgorithmResolver methodResolver, JsonWebProofParsePolicy policy) {
+        VerificationResult result = decode(compactSerializedJwp, methodResolver, policy);
+        result.throwIfInvalid();
+        return result.getProof();
+    }
 
-        if (jwpParts.length != 3 && jwpParts.length != 4) {
-            throw new JsonWebProofException(format("Expected either 3 or 4 parts in compact serialized form, got %d", jwpParts.length));
+    /**
+     * Parse a compact serialized JWP without throwing. Failures are returned rather than thrown so that junk tokens
+     * are cheap to reject. A valid result here only means that the JWP is well-formed and its algorithm resolved; the
+     * parsed JWP is available from {@link VerificationResult#getProof()}.
+     */
+    static VerificationResult decode(String compactSerializedJwp, JsonProofAlgorithmResolver methodResolver, JsonWebProofParsePolicy policy) {
+
+        if (null == compactSerializedJwp)
+            return VerificationResult.malformed("Compact serialized form cannot be null");
+
+        if (compactSerializedJwp.length() > policy.getMaxTokenLength())
+            return VerificationResult.malformed(format("Compact serialized form is longer than %d characters", policy.getMaxTokenLength()));
+
+        // Make a single cheap pass over the compact form before any decoding, JSON parsing or crypto. It finds the
+        // boundaries of the parts (which are then decoded in place rather than split out), checks the charset and that
+        // every segment has a length base64url can decode, and counts the payload segments and empty (withheld) payload
+        // segments in each part. After it, base64url decoding can't fail.
+        final int[] dots = new int[3];
+        final int[] segmentCounts = {1, 1, 1, 1};
+        final int[] emptySegmentCounts = new int[4];
+        int dotCount = 0;
+        int segmentStart = 0;
+
+        for (int i = 0, length = compactSerializedJwp.length(); i <= length; i++) {
+            final char c = (i == length) ? '.' : compactSerializedJwp.charAt(i);
+            if (c == '.' || c == '~') {
+                if (i == segmentStart)
+                    emptySegmentCounts[dotCount]++;
+                else if ((i - segmentStart) % 4 == 1)
+                    return VerificationResult.malformed(
+                            format("The segment ending at position %d of compact serialized form has an impossible length", i));
+                segmentStart = i + 1;
+                if (i == length)
+                    break;
+                if (c == '~') {
+                    segmentCounts[dotCount]++;
+                } else if (dotCount == dots.length) {
+                    return VerificationResult.malformed(format("Expected either 3 or 4 parts in compact serialized form, got %d",
+                            compactSerializedJwp.chars().filter(ch -> ch == '.').count() + 1));
+                } else {
+                    dots[dotCount++] = i;
+                }
+            } else if (!Base64UrlCodec.isAlphabet(c)) {
+                return VerificationResult.malformed(format("Illegal character at position %d of compact serialized form", i));
+            }
         }
 
-        // Cache the encoded serialized parts
-        this.encodedIssuerHeader = jwpParts[0];
-        this.encodedPresentationHeader = (jwpParts.length == 4) ? jwpParts[1] : null;
-        this.encodedPayloads = jwpParts[jwpParts.length - 2];
-        this.encodedProof = jwpParts[jwpParts.length - 1];
+        if (dotCount < 2) {
+            return VerificationResult.malformed(format("Expected either 3 or 4 parts in compact serialized form, got %d", dotCount + 1));
+        }
 
-        // Decode the proof value
-        byte[] proof = Base64Utils.decode(encodedProof);
+        final boolean hasPresentationHeader = (dotCount == 3);
+        final int payloadsPart = dotCount - 1;
+        final int issuerHeaderEnd = dots[0];
+        final int payloadsStart = dots[payloadsPart - 1] + 1;
+        final int payloadsEnd = dots[payloadsPart];
+        final int payloadCount = segmentCounts[payloadsPart];
+
+        for (int part = 0; part <= dotCount; part++) {
+            if (part != payloadsPart && segmentCounts[part] != 1)
+                return VerificationResult.malformed("Only the payloads part of a compact serialized form may contain '~'");
+        }
+
+        if (payloadCount > policy.getMaxPayloadCount())
+            return VerificationResult.malformed(format("JWP has more than %d payloads", policy.getMaxPayloadCount()));
+
+        if (Base64Utils.decodedLength(compactSerializedJwp, 0, issuerHeaderEnd) > policy.getMaxHeaderSize()
+                || (hasPresentationHeader && Base64Utils.decodedLength(compactSerializedJwp, issuerHeaderEnd + 1, dots[1]) > policy.getMaxHeaderSize()))
+            return VerificationResult.malformed(format("JWP header is larger than %d bytes", policy.getMaxHeaderSize()));
+        final int proofLength = Base64Utils.decodedLength(compactSerializedJwp, payloadsEnd + 1, compactSerializedJwp.length());
 
         // Decode the issuer header
-        Map<String, Object> issuerHeader
-                = JsonUtils.deserialize(
-                        Base64Utils.decodeAsString(encodedIssuerHeader));
+        final Map<String, Object> issuerHeader = JsonUtils.tryDeserialize(
+                Base64Utils.decodeAsString(compactSerializedJwp, 0, issuerHeaderEnd));
+        if (null == issuerHeader)
+            return VerificationResult.malformed("Unable to decode issuer header");
 
-        if (!issuerHeader.containsKey("alg"))
-            throw new JsonWebProofException("Missing 'alg' claim in issuer header; unable to determine algorithm");
+        if (!(issuerHeader.get("alg") instanceof String))
+            return VerificationResult.malformed("Missing 'alg' claim in issuer header; unable to determine algorithm");
+
+        final Object zip = issuerHeader.get(CompressionUtils.ZIP_HEADER);
+        if (null != zip && !CompressionUtils.DEFLATE.equals(zip))
+            return VerificationResult.malformed(format("Unsupported payload compression %s", zip));
 
         String alg = (String) issuerHeader.get("alg");
 
+        // If the policy doesn't allow the alg, bail
+        if (!policy.allowsAlg(alg))
+            return VerificationResult.invalid("Proof algorithm " + alg + " is not allowed");
+
         // Resolve an algorithm instance using the "alg" claim in the issuer header
-        JsonProofAlgorithm algorithm = methodResolver.resolve(alg);
+        JsonProofAlgorithm algorithm;
+        try {
+            algorithm = methodResolver.resolve(alg);
+        } catch (JsonWebProofException e) {
+            return VerificationResult.of(e);
+        }
 
         // If we couldn't resolve a proof algorithm, bail
         if (null == algorithm)
-            throw new InvalidProofException("Unable to resolve proof algorithm for " + alg);
+            return VerificationResult.invalid("Unable to resolve proof algorithm for " + alg);
 
         // If the resolved proof algorithm can't handle the alg, bail
         if (!algorithm.handles(alg))
-            throw new InvalidProofException("Resolved proof algorithm can't handle " + alg);
+            return VerificationResult.invalid("Resolved proof algorithm can't handle " + alg);
+
+        // Bail before decoding anything else if the proof can't possibly be valid
+        if (!algorithm.acceptsProofLength(alg, hasPresentationHeader, payloadCount,
+                payloadCount - emptySegmentCounts[payloadsPart], proofLength))
+            return VerificationResult.invalid(format("A %d byte proof can't be valid for this JWP", proofLength));
 
         // Decode the presentation header, if there is one
-        Map<String, Object> presentationHeader =
-                (null != encodedPresentationHeader)
-                        ? JsonUtils.deserialize(Base64Utils.decodeAsString(encodedPresentationHeader))
-                        : null;
-
-        // Split and decode the payloads
-        List<Object> payloads =
-                Arrays.stream(split(encodedPayloads, '~'))
-                        .map(Base64Utils::decodeAsString)
-                        .map(JsonUtils::jsonValueToJavaType)
-                        .collect(Collectors.toUnmodifiableList());
-
-        // Initialize the JWP.
-        this.issuerHeader = issuerHeader;
-        this.presentationHeader = presentationHeader;
-        this.payloads = payloads;
-        this.proof = proof;
-        this.serializedForm = compactSerializedJwp;
+        final Map<String, Object> presentationHeader = hasPresentationHeader
+                ? JsonUtils.tryDeserialize(Base64Utils.decodeAsString(compactSerializedJwp, issuerHeaderEnd + 1, dots[1]))
+                : null;
+        if (hasPresentationHeader && null == presentationHeader)
+            return VerificationResult.malformed("Unable to decode presentation header");
+
+        try {
+            // Decode the proof value
+            byte[] proof = Base64Utils.decode(compactSerializedJwp, payloadsEnd + 1, compactSerializedJwp.length());
+
+            // Decode the payloads; withheld payloads in presentation form decode to null. The decoded bytes are kept,
+            // since they're what the proof covers. Compressed payloads are only decompressed when they're first read.
+            byte[][] encodedPayloads = new byte[payloadCount][];
+            int payloadStart = payloadsStart;
+            for (int i = 0; ; i++) {
+                int payloadEnd = compactSerializedJwp.indexOf('~', payloadStart);
+                if (payloadEnd < 0 || payloadEnd > payloadsEnd)
+                    payloadEnd = payloadsEnd;
+                if (payloadEnd != payloadStart)
+                    encodedPayloads[i] = Base64Utils.decode(compactSerializedJwp, payloadStart, payloadEnd);
+                if (payloadEnd == payloadsEnd)
+                    break;
+                payloadStart = payloadEnd + 1;
+            }
+
+            List<Object> payloads = (null != zip)
+                    ? EncodedPayloadList.compressed(encodedPayloads, policy.getMaxDecompressedPayloadSize())
+                    : EncodedPayloadList.decoded(encodedPayloads);
+
+            // Initialize the JWP.
+            return VerificationResult.valid().withProof(
+                    new JsonWebProof(issuerHeader, presentationHeader, payloads, proof, compactSerializedJwp));
+
+        } catch (RuntimeException e) {
+            // The checks above leave nothing here that should throw; this is a backstop
+            return VerificationResult.malformed("Unable to decode compact serialized form", e);
+        }
     }
 
     public static JsonWebProof parse(JsonProofAlgorithm method, String compactForm) {
-        JsonProofAlgorithmResolver resolver = alg -> {
-            if (!method.handles(alg))
-                throw new InvalidProofException(format("%s cannot handle JWP alg %s", method.getClass().getName(), method));
-            return method;
-        };
-        return parse(resolver, compactForm);
+        return parse(method, compactForm, JsonWebProofParsePolicy.DEFAULT);
+    }
+
+    public static JsonWebProof parse(JsonProofAlgorithm method, String compactForm, JsonWebProofParsePolicy policy) {
+        return decodeOrThrow(compactForm, resolverFor(method), policy);
     }
 
     public static JsonWebProof parse(JsonProofAlgorithmResolver methodResolver, String compactForm) {
-        return new JsonWebProof(compactForm, methodResolver);
+        return parse(methodResolver, compactForm, JsonWebProofParsePolicy.DEFAULT);
+    }
+
+    public static JsonWebProof parse(JsonProofAlgorithmResolver methodResolver, String compactForm, JsonWebProofParsePolicy policy) {
+        return decodeOrThrow(compactForm, methodResolver, policy);
+    }
+
+    public static VerificationResult verify(JsonProofAlgorithm method, String compactForm) {
+        return verify(resolverFor(method), compactForm, JsonWebProofParsePolicy.DEFAULT);
+    }
+
+    public static VerificationResult verify(JsonProofAlgorithmResolver methodResolver, String compactForm) {
+        return verify(methodResolver, compactForm, JsonWebProofParsePolicy.DEFAULT);
+    }
+
+    /**
+     * Parse a compact serialized JWP and verify its proof without throwing. This is the cheapest way to reject
+     * invalid tokens: failures are returned as values, and no stack traces are captured.
+     *
+     * @return a valid result carrying the parsed JWP, or a failure describing why the JWP was rejected. Failures
+     * found after parsing still carry the parsed JWP.
+     */
+    public static VerificationResult verify(JsonProofAlgorithmResolver methodResolver, String compactForm, JsonWebProofParsePolicy policy) {
+
+        VerificationResult parsed = decode(compactForm, methodResolver, policy);
+
+        if (!parsed.isValid())
+            return parsed;
+
+        JsonWebProof jwp = parsed.getProof();
+        JsonProofAlgorithm algorithm;
+        try {
+            algorithm = methodResolver.resolve((String) jwp.issuerHeader.get("alg"));
+        } catch (JsonWebProofException e) {
+            return VerificationResult.of(e).withProof(jwp);
+        }
+
+        return algorithm.validate(jwp).withProof(jwp);
+    }
+
+    private static JsonProofAlgorithmResolver resolverFor(JsonProofAlgorithm method) {
+        return alg -> method.handles(alg) ? method : null;
     }
 
+    /**
+     * Build a presentation-form JWP from an issued-form JWP by splicing its compact serialized form. The encoded
+     * issuer header and the encoded segments of the disclosed payloads are copied exactly as they appear in the issued
+     * form, withheld payloads become empty segments, and only the presentation header and proof are newly encoded.
+     * Nothing that was signed is ever re-encoded, so the presentation can't drift from what the issuer signed.
+     *
+     * @param issuedFormJwp          the issued-form JWP
+     * @param disclosed              which payloads to disclose, by index
+     * @param presentationHeader     the presentation header
+     * @param presentationHeaderJson the presentation header JSON exactly as it was signed
+     * @param proof                  the presentation proof
+     */
+    static JsonWebProof splicePresentation(JsonWebProof issuedFormJwp, boolean[] disclosed,
+                                           Map<String, Object> presentationHeader, String presentationHeaderJson,
+                                           byte[] proof) {
+
+        final List<Object> issuedPayloads = issuedFormJwp.payloads;
+
+        if (issuedFormJwp.isInPresentationForm())
+            throw new IllegalArgumentException("The JWP is already in presentation form");
+        else if (disclosed.length != issuedPayloads.size())
+            throw new IllegalArgumentException("disclosed must have one entry per payload");
+
+        final String issued = issuedFormJwp.serialize();
+        final int issuerHeaderEnd = issued.indexOf('.');
+        final int payloadsEnd = issued.indexOf('.', issuerHeaderEnd + 1);
+        final byte[] presentationHeaderBytes = presentationHeaderJson.getBytes(StandardCharsets.UTF_8);
+
+        // The presentation is never longer than the issued form plus the new header and proof
+        final StringBuilder jwp = new StringBuilder(issued.length()
+                + Base64Utils.encodedLength(presentationHeaderBytes.length)
+                + Base64Utils.encodedLength(proof.length) + 2);
+
+        jwp.append(issued, 0, issuerHeaderEnd).append('.');
+        Base64Utils.encode(presentationHeaderBytes, 0, presentationHeaderBytes.length, jwp);
+        jwp.append('.');
+
+        final List<Object> payloads = (issuedPayloads instanceof EncodedPayloadList)
+                ? ((EncodedPayloadList) issuedPayloads).disclose(disclosed)
+                : new ArrayList<>(issuedPayloads.size());
+        int segmentStart = issuerHeaderEnd + 1;
+        for (int i = 0; i < disclosed.length; i++) {
+            int segmentEnd = issued.indexOf('~', segmentStart);
+            if (segmentEnd < 0 || segmentEnd > payloadsEnd)
+                segmentEnd = payloadsEnd;
+            if (i > 0)
+                jwp.append('~');
+            if (disclosed[i])
+                jwp.append(issued, segmentStart, segmentEnd);
+            if (!(payloads instanceof EncodedPayloadList))
+                payloads.add(disclosed[i] ? issuedPayloads.get(i) : null);
+            segmentStart = segmentEnd + 1;
+        }
+
+        jwp.append('.');
+        Base64Utils.encode(proof, 0, proof.length, jwp);
+
+        return new JsonWebProof(issuedFormJwp.issuerHeader, presentationHeader, payloads, proof, jwp.toString());
+    }
 
     public String serialize() {
 
+        // JWPs are immutable, so once we have a compact form (parsed or built) we never serialize this thing again.
+        // Read the field once; if another thread is racing us, we both compute and publish the same value.
+        String result = this.serializedForm;
+
+        if (null == result) {
+            result = buildCompactForm();
+            this.serializedForm = result;
+        }
+
+        return result;
+    }
+
+    private String buildCompactForm() {
+
+        // Encode every part straight into one buffer rather than building and joining intermediate strings
+        StringBuilder jwp = new StringBuilder(Base64Utils.encodedLength(this.proof.length) + 256 * (this.payloads.size() + 2));
+
         // Encode the issuer header
-        if (null == encodedIssuerHeader)
-            encodedIssuerHeader = Base64Utils.encode(JsonUtils.serialize(this.issuerHeader));
+        final String encodedIssuerHeader = this.encodedIssuerHeader;
+        if (null != encodedIssuerHeader)
+            jwp.append(encodedIssuerHeader);
+        else
+            appendEncoded(jwp, JsonUtils.serialize(this.issuerHeader));
 
         // Encode the presentation header if there is one
-        encodedPresentationHeader =
-                this.isInPresentationForm()
-                        ? Base64Utils.encode(JsonUtils.serialize(this.presentationHeader))
-                        : null;
+        if (this.isInPresentationForm()) {
+            jwp.append('.');
+            appendEncoded(jwp, JsonUtils.serialize(this.presentationHeader));
+        }
 
         // Encode the payloads
-        StringJoiner payloadJoiner = new StringJoiner("~");
-        this.payloads.stream()
-                .map(JsonUtils::javaTypeToJsonValue)
-                .map(Base64Utils::encode)
-                .forEach(payloadJoiner::add);
-
-        encodedPayloads = payloadJoiner.toString();
+        jwp.append('.');
+        for (int i = 0; i < this.payloads.size(); i++) {
+            if (i > 0)
+                jwp.append('~');
+            final byte[] payload = getPayloadBytes(i);
+            if (null != payload)
+                Base64Utils.encode(payload, 0, payload.length, jwp);
+        }
 
         // Encode the proof
-        encodedProof = Base64Utils.encode(this.proof);
-
-        // Construct the compact serialized JWP
-        StringJoiner jwpJoiner = new StringJoiner(".");
-        jwpJoiner.add(encodedIssuerHeader);
-        if (null != encodedPresentationHeader)
-            jwpJoiner.add(encodedPresentationHeader);
-        jwpJoiner.add(encodedPayloads);
-        jwpJoiner.add(encodedProof);
-
-        // Store the serialized form in the JsonWebProof, so we never serialize this thing again
-        this.serializedForm = jwpJoiner.toString();
+        jwp.append('.');
+        Base64Utils.encode(this.proof, 0, this.proof.length, jwp);
 
         // Return the compact serialized JWP
-        return this.serializedForm;
+        return jwp.toString();
     }
 
     public boolean isInPresentationForm() {
@@ -167,14 +398,79 @@ public final class JsonWebProof {
         return payloads.toString();
     }
 
-    void setEncodedIssuerHeader(String encodedIssuerHeader) {
-        this.encodedIssuerHeader = encodedIssuerHeader;
+    /**
+     * @return true if the payload at the index is withheld. Unlike reading the payload, this never decompresses it.
+     */
+    boolean isWithheld(int index) {
+        return (payloads instanceof EncodedPayloadList)
+                ? null == ((EncodedPayloadList) payloads).getEncodedBytes(index)
+                : null == payloads.get(index);
+    }
+
+    /**
+     * @return the bytes of the payload at the index as they appear on the wire, which is what proofs cover, or null if
+     * the payload is withheld. That's the payload's JSON in UTF-8, or that JSON compressed if the issuer header says so.
+     * Parsed JWPs return the bytes they were parsed from, never a re-encoding of the decoded payload.
+     */
+    byte[] getPayloadBytes(int index) {
+        return payloadBytes(payloads, index);
+    }
+
+    /**
+     * @return the bytes of a payload as they appear on the wire; see {@link #getPayloadBytes(int)}.
+     */
+    static byte[] payloadBytes(List<Object> payloads, int index) {
+        if (payloads instanceof EncodedPayloadList)
+            return ((EncodedPayloadList) payloads).getEncodedBytes(index);
+        final Object payload = payloads.get(index);
+        return (null == payload) ? null : JsonUtils.javaTypeToJsonValue(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prepare payloads for issuance, compressing them if asked to. Issuers that compress must also put
+     * {@code "zip": "DEF"} in the issuer header, which {@link #putCompressionHeader} does.
+     */
+    static List<Object> issuedPayloads(boolean compress, Object... payloads) {
+        return compress ? EncodedPayloadList.compress(payloads) : List.of(payloads);
+    }
+
+    static void putCompressionHeader(Map<String, Object> issuerHeader) {
+        issuerHeader.put(CompressionUtils.ZIP_HEADER, CompressionUtils.DEFLATE);
     }
 
     String getEncodedIssuerHeader() {
-        if (null == encodedIssuerHeader)
-            serialize();
-        return encodedIssuerHeader;
+        String result = this.encodedIssuerHeader;
+        if (null == result) {
+            String serialized = serialize();
+            result = serialized.substring(0, serialized.indexOf('.'));
+            this.encodedIssuerHeader = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the issuer header JSON exactly as it appears in the compact serialized form, which is what was signed.
+     */
+    String getIssuerHeaderJson() {
+        String serialized = serialize();
+        return Base64Utils.decodeAsString(serialized, 0, serialized.indexOf('.'));
+    }
+
+    /**
+     * @return the presentation header JSON exactly as it appears in the compact serialized form, or null if this JWP
+     * is in issued form.
+     */
+    String getPresentationHeaderJson() {
+        if (!isInPresentationForm())
+            return null;
+        String serialized = serialize();
+        int start = serialized.indexOf('.') + 1;
+        return Base64Utils.decodeAsString(serialized, start, serialized.indexOf('.', start));
+    }
+
+    private static void appendEncoded(StringBuilder builder, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Base64Utils.encode(bytes, 0, bytes.length, builder);
     }
 
 }
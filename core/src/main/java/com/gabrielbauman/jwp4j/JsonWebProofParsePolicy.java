@@ -0,0 +1,110 @@
+package com.gabrielbauman.jwp4j;
+
+import java.util.Set;
+
+/**
+ * Resource limits applied while parsing a compact serialized {@link JsonWebProof}. Tokens that exceed a limit, or that
+ * fail the cheap structural checks made before any base64 decoding, JSON parsing or cryptography, are rejected as early
+ * as possible so that junk tokens cost close to nothing. Policies are immutable; the {@code with} methods return
+ * modified copies.
+ */
+public final class JsonWebProofParsePolicy {
+
+    /**
+     * The default limit on the decompressed size of a compressed payload, in bytes.
+     */
+    public static final int DEFAULT_MAX_DECOMPRESSED_PAYLOAD_SIZE = 1024 * 1024;
+
+    /**
+     * A policy with no restriction on algorithms and no limits, except that compressed payloads may not decompress to
+     * more than {@link #DEFAULT_MAX_DECOMPRESSED_PAYLOAD_SIZE} bytes. Parsing still runs the structural checks.
+     */
+    public static final JsonWebProofParsePolicy DEFAULT =
+            new JsonWebProofParsePolicy(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                    DEFAULT_MAX_DECOMPRESSED_PAYLOAD_SIZE, null);
+
+    private final int maxTokenLength;
+    private final int maxPayloadCount;
+    private final int maxHeaderSize;
+    private final int maxDecompressedPayloadSize;
+    private final Set<String> allowedAlgs;
+
+    private JsonWebProofParsePolicy(int maxTokenLength, int maxPayloadCount, int maxHeaderSize,
+                                    int maxDecompressedPayloadSize, Set<String> allowedAlgs) {
+        this.maxTokenLength = maxTokenLength;
+        this.maxPayloadCount = maxPayloadCount;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxDecompressedPayloadSize = maxDecompressedPayloadSize;
+        this.allowedAlgs = allowedAlgs;
+    }
+
+    /**
+     * @param maxTokenLength the maximum length of a compact serialized JWP, in characters
+     */
+    public JsonWebProofParsePolicy withMaxTokenLength(int maxTokenLength) {
+        if (maxTokenLength < 1)
+            throw new IllegalArgumentException("maxTokenLength must be at least 1");
+        return new JsonWebProofParsePolicy(maxTokenLength, maxPayloadCount, maxHeaderSize, maxDecompressedPayloadSize, allowedAlgs);
+    }
+
+    /**
+     * @param maxPayloadCount the maximum number of payloads in a JWP, including withheld payloads
+     */
+    public JsonWebProofParsePolicy withMaxPayloadCount(int maxPayloadCount) {
+        if (maxPayloadCount < 1)
+            throw new IllegalArgumentException("maxPayloadCount must be at least 1");
+        return new JsonWebProofParsePolicy(maxTokenLength, maxPayloadCount, maxHeaderSize, maxDecompressedPayloadSize, allowedAlgs);
+    }
+
+    /**
+     * @param maxHeaderSize the maximum decoded size of the issuer and presentation headers, in bytes
+     */
+    public JsonWebProofParsePolicy withMaxHeaderSize(int maxHeaderSize) {
+        if (maxHeaderSize < 1)
+            throw new IllegalArgumentException("maxHeaderSize must be at least 1");
+        return new JsonWebProofParsePolicy(maxTokenLength, maxPayloadCount, maxHeaderSize, maxDecompressedPayloadSize, allowedAlgs);
+    }
+
+    /**
+     * @param maxDecompressedPayloadSize the maximum size a compressed payload may decompress to, in bytes. Payloads are
+     *                                   decompressed when they're first read, so that's when the limit is enforced.
+     */
+    public JsonWebProofParsePolicy withMaxDecompressedPayloadSize(int maxDecompressedPayloadSize) {
+        if (maxDecompressedPayloadSize < 1)
+            throw new IllegalArgumentException("maxDecompressedPayloadSize must be at least 1");
+        return new JsonWebProofParsePolicy(maxTokenLength, maxPayloadCount, maxHeaderSize, maxDecompressedPayloadSize, allowedAlgs);
+    }
+
+    /**
+     * @param allowedAlgs the JPA identifiers ("alg" values) that may appear in an issuer header
+     */
+    public JsonWebProofParsePolicy withAllowedAlgs(String... allowedAlgs) {
+        if (null == allowedAlgs || allowedAlgs.length < 1)
+            throw new IllegalArgumentException("allowedAlgs cannot be empty");
+        return new JsonWebProofParsePolicy(maxTokenLength, maxPayloadCount, maxHeaderSize, maxDecompressedPayloadSize, Set.of(allowedAlgs));
+    }
+
+    public int getMaxTokenLength() {
+        return maxTokenLength;
+    }
+
+    public int getMaxPayloadCount() {
+        return maxPayloadCount;
+    }
+
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    public int getMaxDecompressedPayloadSize() {
+        return maxDecompressedPayloadSize;
+    }
+
+    /**
+     * @return true if JWPs with the given alg may be parsed under this policy
+     */
+    public boolean allowsAlg(String alg) {
+        return null == allowedAlgs || (null != alg && allowedAlgs.contains(alg));
+    }
+
+}
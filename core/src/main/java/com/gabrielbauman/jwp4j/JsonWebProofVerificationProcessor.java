@@ -0,0 +1,396 @@
+package com.gabrielbauman.jwp4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A {@link Flow.Processor} that turns a stream of compact serialized JWPs into a stream of verification results. Each
+ * item is parsed (which resolves its {@link JsonProofAlgorithm}) in one stage and verified in a second stage, and both
+ * stages run on an {@link Executor} with their own parallelism limit, so no work happens on the threads that publish
+ * or consume items.
+ * <p>
+ * The processor never has more than maxInFlight items requested from upstream that haven't yet been delivered
+ * downstream, so slow consumers apply backpressure all the way to the source. Results are emitted either in the order
+ * the JWPs arrived or as soon as each one is done. The processor supports a single downstream subscriber.
+ *
+ * @param <T> the type of the incoming compact serialized JWPs
+ */
+public final class JsonWebProofVerificationProcessor<T> implements Flow.Processor<T, JsonWebProofVerificationProcessor.Result<T>> {
+
+    private static final VerificationResult REJECTED_BY_EXECUTOR =
+            VerificationResult.rejected("The executor rejected the verification");
+
+    private final JsonProofAlgorithmResolver resolver;
+    private final Function<? super T, String> toCompactForm;
+    private final Stage parseStage;
+    private final Stage verifyStage;
+    private final int maxInFlight;
+    private final boolean ordered;
+
+    // Results in arrival order (when ordered) or completion order (when unordered)
+    private final Queue<Slot<T>> results = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super Result<T>> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+    private boolean terminated;
+
+    /**
+     * @param resolver          resolves the {@link JsonProofAlgorithm} for each JWP
+     * @param toCompactForm     converts incoming items to compact serialized JWPs
+     * @param executor          runs the parse and verify stages
+     * @param parseParallelism  the maximum number of items being parsed at once
+     * @param verifyParallelism the maximum number of items being verified at once
+     * @param maxInFlight       the maximum number of items requested from upstream but not yet delivered downstream
+     * @param ordered           true to emit results in arrival order, false to emit them as soon as they're ready
+     */
+    public JsonWebProofVerificationProcessor(JsonProofAlgorithmResolver resolver, Function<? super T, String> toCompactForm,
+                                             Executor executor, int parseParallelism, int verifyParallelism,
+                                             int maxInFlight, boolean ordered) {
+        if (null == resolver || null == toCompactForm || null == executor)
+            throw new IllegalArgumentException("resolver, toCompactForm and executor are required");
+        else if (parseParallelism < 1 || verifyParallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        else if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+
+        this.resolver = resolver;
+        this.toCompactForm = toCompactForm;
+        this.parseStage = new Stage(executor, parseParallelism);
+        this.verifyStage = new Stage(executor, verifyParallelism);
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Create a processor for compact serialized JWP strings, using the same parallelism for both stages.
+     */
+    public static JsonWebProofVerificationProcessor<String> ofStrings(
+            JsonProofAlgorithmResolver resolver, Executor executor, int parallelism, int maxInFlight, boolean ordered) {
+        return new JsonWebProofVerificationProcessor<>(resolver, Function.identity(), executor, parallelism, parallelism,
+                maxInFlight, ordered);
+    }
+
+    /**
+     * Create a processor for compact serialized JWPs as ASCII bytes, using the same parallelism for both stages.
+     */
+    public static JsonWebProofVerificationProcessor<byte[]> ofBytes(
+            JsonProofAlgorithmResolver resolver, Executor executor, int parallelism, int maxInFlight, boolean ordered) {
+        return new JsonWebProofVerificationProcessor<>(resolver, bytes -> new String(bytes, StandardCharsets.US_ASCII),
+                executor, parallelism, parallelism, maxInFlight, ordered);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Result<T>> subscriber) {
+
+        if (null == subscriber)
+            throw new NullPointerException("subscriber cannot be null");
+
+        synchronized (this) {
+            if (null != downstream) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    public void request(long n) {
+                    }
+
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("JsonWebProofVerificationProcessor supports a single subscriber"));
+                return;
+            }
+            downstream = subscriber;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    // Rule 3.9 of the reactive streams spec: a non-positive request fails the subscription
+                    invalidRequest = new IllegalArgumentException("Subscribers must request a positive number of items");
+                    Flow.Subscription subscription = upstream;
+                    if (null != subscription)
+                        subscription.cancel();
+                    drain();
+                    return;
+                }
+                requested.getAndUpdate(current -> (current + n < 0) ? Long.MAX_VALUE : current + n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream;
+                if (null != subscription)
+                    subscription.cancel();
+            }
+        });
+
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+
+        if (null != upstream) {
+            subscription.cancel();
+            return;
+        }
+
+        upstream = subscription;
+
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+
+        subscription.request(maxInFlight);
+    }
+
+    @Override
+    public void onNext(T item) {
+
+        if (cancelled)
+            return;
+
+        final Slot<T> slot = new Slot<>();
+        outstanding.incrementAndGet();
+
+        if (ordered)
+            results.add(slot);
+
+        parseStage.submit(() -> {
+            final VerificationResult parsed;
+            try {
+                parsed = JsonWebProof.decode(toCompactForm.apply(item), resolver, JsonWebProofParsePolicy.DEFAULT);
+            } catch (RuntimeException e) {
+                complete(slot, new Result<>(item, VerificationResult.malformed("Unable to parse JWP", e)));
+                return;
+            }
+            if (!parsed.isValid()) {
+                complete(slot, new Result<>(item, parsed));
+                return;
+            }
+            verifyStage.submit(() -> {
+                final JsonWebProof jwp = parsed.getProof();
+                VerificationResult verified;
+                try {
+                    final JsonProofAlgorithm algorithm = resolver.resolve((String) jwp.issuerHeader.get("alg"));
+                    verified = (null == algorithm)
+                            ? VerificationResult.unverifiable("Unable to resolve proof algorithm")
+                            : algorithm.validate(jwp);
+                } catch (JsonWebProofException e) {
+                    verified = VerificationResult.of(e);
+                } catch (RuntimeException e) {
+                    verified = VerificationResult.invalid("Unable to verify JWP", e);
+                }
+                complete(slot, new Result<>(item, verified.withProof(jwp)));
+            }, () -> complete(slot, new Result<>(item, REJECTED_BY_EXECUTOR.withProof(parsed.getProof()))));
+        }, () -> complete(slot, new Result<>(item, REJECTED_BY_EXECUTOR)));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void complete(Slot<T> slot, Result<T> result) {
+        slot.result = result;
+        if (!ordered)
+            results.add(slot);
+        drain();
+    }
+
+    /**
+     * Deliver whatever results downstream has asked for. Only one thread drains at a time; threads that arrive while
+     * another is draining just tell it to go around again.
+     */
+    private void drain() {
+
+        if (wip.getAndIncrement() != 0)
+            return;
+
+        int missed = 1;
+
+        for (; ; ) {
+
+            final Flow.Subscriber<? super Result<T>> subscriber = downstream;
+
+            if (null != subscriber && !terminated && null != invalidRequest) {
+                terminated = true;
+                cancelled = true;
+                subscriber.onError(invalidRequest);
+            } else if (null != subscriber && !terminated) {
+
+                final long demand = requested.get();
+                long emitted = 0;
+
+                while (emitted != demand && !cancelled) {
+                    Slot<T> head = results.peek();
+                    if (null == head || null == head.result)
+                        break;
+                    results.poll();
+                    outstanding.decrementAndGet();
+                    subscriber.onNext(head.result);
+                    emitted++;
+
+                    // Each delivered result frees up room for one more item from upstream
+                    Flow.Subscription subscription = upstream;
+                    if (null != subscription && !upstreamDone)
+                        subscription.request(1);
+                }
+
+                if (emitted > 0 && demand != Long.MAX_VALUE)
+                    requested.addAndGet(-emitted);
+
+                if (!cancelled && upstreamDone && outstanding.get() == 0) {
+                    terminated = true;
+                    Throwable error = upstreamError;
+                    if (null != error)
+                        subscriber.onError(error);
+                    else
+                        subscriber.onComplete();
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                break;
+        }
+    }
+
+    private static final class Slot<T> {
+        volatile Result<T> result;
+    }
+
+    /**
+     * Runs tasks on an executor, with at most parallelism of them running at once. If the executor rejects a worker
+     * and no other worker is left to run the queued tasks, they're rejected instead.
+     */
+    private static final class Stage {
+
+        private final Executor executor;
+        private final int parallelism;
+        private final Queue<Job> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger active = new AtomicInteger();
+
+        Stage(Executor executor, int parallelism) {
+            this.executor = executor;
+            this.parallelism = parallelism;
+        }
+
+        void submit(Runnable task, Runnable onRejected) {
+            queue.add(new Job(task, onRejected));
+            startWorkers();
+        }
+
+        private void startWorkers() {
+            for (; ; ) {
+                int current = active.get();
+                if (current >= parallelism || queue.isEmpty())
+                    return;
+                if (active.compareAndSet(current, current + 1)) {
+                    try {
+                        executor.execute(this::work);
+                    } catch (RejectedExecutionException e) {
+                        if (active.decrementAndGet() == 0) {
+                            Job job;
+                            while (null != (job = queue.poll())) {
+                                job.onRejected.run();
+                            }
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void work() {
+            try {
+                Job job;
+                while (null != (job = queue.poll())) {
+                    job.task.run();
+                }
+            } finally {
+                active.decrementAndGet();
+            }
+            // A task may have been queued after we last looked but before we stopped counting as active
+            startWorkers();
+        }
+
+        private static final class Job {
+
+            final Runnable task;
+            final Runnable onRejected;
+
+            Job(Runnable task, Runnable onRejected) {
+                this.task = task;
+                this.onRejected = onRejected;
+            }
+        }
+    }
+
+    /**
+     * The outcome of verifying one JWP.
+     *
+     * @param <T> the type of the incoming compact serialized JWPs
+     */
+    public static final class Result<T> {
+
+        private final T input;
+        private final VerificationResult verificationResult;
+
+        Result(T input, VerificationResult verificationResult) {
+            this.input = input;
+            this.verificationResult = verificationResult;
+        }
+
+        public T getInput() {
+            return input;
+        }
+
+        /**
+         * @return the parsed JWP, or null if it couldn't be parsed
+         */
+        public JsonWebProof getProof() {
+            return verificationResult.getProof();
+        }
+
+        public VerificationResult getVerificationResult() {
+            return verificationResult;
+        }
+
+        public boolean isValid() {
+            return verificationResult.isValid();
+        }
+
+        @Override
+        public String toString() {
+            return verificationResult.toString();
+        }
+    }
+
+}
@@ -0,0 +1,381 @@
+package com.gabrielbauman.jwp4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Verifies JWPs on an {@link Executor} while keeping any one issuer from running up everyone else's latency.
+ * <p>
+ * Each JWP is charged the cost its {@link JsonProofAlgorithm} estimates for it, and the engine never queues more than
+ * maxQueuedCost of work. When a JWP doesn't fit, the engine makes room by shedding the newest queued work of the issuer
+ * using the most of the queue relative to its weight; if that's the issuer asking for room, the new JWP is shed
+ * instead. Queued work is run in weighted fair order (self-clocked fair queueing), so each backlogged issuer gets
+ * verification time in proportion to its weight however much work it submits. Every JWP has a deadline: work still
+ * queued when its deadline passes is dropped, and algorithms that check several signatures stop between them. Expired
+ * and cancelled work is purged before any live work is shed to make room.
+ * <p>
+ * Callers name each JWP's issuer when they submit it. The JWP hasn't been verified yet, so nothing in it, not even the
+ * "kid" in its issuer header, says who really sent it: a sender could claim a fresh fair share with every JWP, or
+ * charge its junk to another issuer and get that issuer's work shed. Name issuers by something the deployment already
+ * trusts, like the tenant or connection a JWP arrived on.
+ * <p>
+ * Shed and abandoned JWPs complete with a {@link VerificationResult.Code#REJECTED} result. Results are never
+ * completed while the engine holds its lock, but dependent stages may run on the engine's worker threads.
+ */
+public final class VerificationEngine {
+
+    private static final Duration MAX_TIMEOUT = Duration.ofNanos(Long.MAX_VALUE / 2);
+
+    private final JsonProofAlgorithmResolver resolver;
+    private final Executor executor;
+    private final int parallelism;
+    private final long maxQueuedCost;
+
+    // Everything below is guarded by this
+    private final Map<String, Integer> weights = new HashMap<>();
+    private final Map<String, Issuer> issuers = new HashMap<>();
+    private final PriorityQueue<Issuer> backlogged = new PriorityQueue<>(
+            Comparator.comparingDouble(issuer -> issuer.queue.getFirst().finishTag));
+    private long queuedCost;
+    private double virtualTime;
+    private int active;
+
+    /**
+     * @param resolver      resolves the {@link JsonProofAlgorithm} for each JWP
+     * @param executor      runs verifications
+     * @param parallelism   the maximum number of JWPs being verified at once
+     * @param maxQueuedCost the maximum total estimated cost of JWPs waiting to be verified
+     */
+    public VerificationEngine(JsonProofAlgorithmResolver resolver, Executor executor, int parallelism, long maxQueuedCost) {
+        if (null == resolver || null == executor)
+            throw new IllegalArgumentException("resolver and executor are required");
+        else if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        else if (maxQueuedCost < 1)
+            throw new IllegalArgumentException("maxQueuedCost must be at least 1");
+
+        this.resolver = resolver;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.maxQueuedCost = maxQueuedCost;
+    }
+
+    /**
+     * Set an issuer's share of verification time relative to other issuers. Issuers have a weight of 1 by default.
+     * The new weight applies to JWPs submitted after the call.
+     */
+    public synchronized void setWeight(String issuer, int weight) {
+        if (weight < 1)
+            throw new IllegalArgumentException("weight must be at least 1");
+        weights.put(issuer, weight);
+    }
+
+    /**
+     * @return the total estimated cost of JWPs waiting to be verified
+     */
+    public synchronized long getQueuedCost() {
+        return queuedCost;
+    }
+
+    /**
+     * Parse a compact serialized JWP on the calling thread and submit it for verification.
+     *
+     * @param compactSerializedJwp the JWP to verify
+     * @param issuer               the issuer to schedule the JWP as; null counts as an issuer too
+     * @param timeout              how long the caller is willing to wait for the result
+     * @return the result, which is already complete if the JWP couldn't be parsed or was shed
+     */
+    public CompletableFuture<VerificationResult> submit(String compactSerializedJwp, String issuer, Duration timeout) {
+        final VerificationResult parsed = JsonWebProof.decode(compactSerializedJwp, resolver, JsonWebProofParsePolicy.DEFAULT);
+        return parsed.isValid()
+                ? submit(parsed.getProof(), issuer, timeout)
+                : CompletableFuture.completedFuture(parsed);
+    }
+
+    /**
+     * Submit a JWP for verification.
+     *
+     * @param jwp     the JWP to verify
+     * @param issuer  the issuer to schedule the JWP as; null counts as an issuer too
+     * @param timeout how long the caller is willing to wait for the result
+     * @return the result, which is already complete if the JWP was shed
+     */
+    public CompletableFuture<VerificationResult> submit(JsonWebProof jwp, String issuer, Duration timeout) {
+
+        if (null == jwp)
+            throw new IllegalArgumentException("jwp cannot be null");
+        else if (null == timeout || timeout.isNegative())
+            throw new IllegalArgumentException("timeout must not be null or negative");
+
+        // Deadlines are compared by subtraction, so keep them within half the range of System.nanoTime()
+        final long deadline = System.nanoTime() + ((timeout.compareTo(MAX_TIMEOUT) > 0) ? MAX_TIMEOUT : timeout).toNanos();
+
+        final String alg = (String) jwp.issuerHeader.get("alg");
+        final JsonProofAlgorithm algorithm;
+        try {
+            algorithm = resolver.resolve(alg);
+        } catch (JsonWebProofException e) {
+            return CompletableFuture.completedFuture(VerificationResult.of(e).withProof(jwp));
+        }
+        if (null == algorithm)
+            return CompletableFuture.completedFuture(
+                    VerificationResult.unverifiable(String.format("No JsonProofAlgorithm can handle alg %s", alg)).withProof(jwp));
+
+        final Task task = new Task(jwp, algorithm, Math.max(1, algorithm.estimateVerificationCost(jwp)), deadline);
+
+        final List<Task> expired = new ArrayList<>();
+        final List<Task> shed;
+        final boolean startWorker;
+
+        synchronized (this) {
+
+            // Work that has expired or been given up on shouldn't count against the queue, nor get fresh work shed
+            if (queuedCost + task.cost > maxQueuedCost)
+                purge(expired);
+
+            shed = (task.cost > maxQueuedCost) ? null : makeRoom(issuer, task.cost);
+            if (null != shed)
+                enqueue(issuer, task);
+
+            startWorker = (null != shed) && active < parallelism;
+            if (startWorker)
+                active++;
+        }
+
+        for (Task dead : expired) {
+            dead.future.complete(VerificationResult.rejected("The deadline passed before the JWP was verified").withProof(dead.jwp));
+        }
+
+        if (null == shed)
+            return CompletableFuture.completedFuture(
+                    VerificationResult.rejected("The verifier is overloaded").withProof(jwp));
+
+        for (Task victim : shed) {
+            victim.future.complete(VerificationResult.rejected("The verifier is overloaded").withProof(victim.jwp));
+        }
+
+        if (startWorker)
+            startWorker();
+
+        return task.future;
+    }
+
+    private void startWorker() {
+
+        try {
+            executor.execute(this::work);
+        } catch (RejectedExecutionException e) {
+
+            // Stop counting the worker that never started. If no other worker is left to drain the queue, nothing
+            // queued would ever run, so fail it all.
+            final List<Task> stranded = new ArrayList<>();
+            synchronized (this) {
+                active--;
+                if (active == 0) {
+                    for (Issuer entry : issuers.values()) {
+                        stranded.addAll(entry.queue);
+                    }
+                    issuers.clear();
+                    backlogged.clear();
+                    queuedCost = 0;
+                }
+            }
+
+            for (Task task : stranded) {
+                task.future.complete(VerificationResult.rejected("The executor rejected the verification").withProof(task.jwp));
+            }
+        }
+    }
+
+    /**
+     * Drop queued tasks whose deadline has passed or whose result is already complete, adding the expired ones that
+     * still need completing to the list.
+     */
+    private void purge(List<Task> expired) {
+
+        final long now = System.nanoTime();
+
+        for (Iterator<Issuer> iterator = issuers.values().iterator(); iterator.hasNext(); ) {
+
+            final Issuer entry = iterator.next();
+            final Task head = entry.queue.getFirst();
+
+            final boolean removed = entry.queue.removeIf(task -> {
+                final boolean done = task.future.isDone();
+                if (!done && now - task.deadline < 0)
+                    return false;
+                if (!done)
+                    expired.add(task);
+                entry.queuedCost -= task.cost;
+                queuedCost -= task.cost;
+                return true;
+            });
+
+            if (!removed)
+                continue;
+
+            if (entry.queue.isEmpty()) {
+                backlogged.remove(entry);
+                iterator.remove();
+            } else {
+                entry.lastFinishTag = entry.queue.getLast().finishTag;
+                // The issuer's place in the schedule depends on its first task
+                if (entry.queue.getFirst() != head) {
+                    backlogged.remove(entry);
+                    backlogged.add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Make room in the queue for a task, shedding the newest work of the issuer using the most of the queue relative to
+     * its weight if necessary. Returns the tasks shed, or null if the task should be shed instead.
+     */
+    private List<Task> makeRoom(String issuer, long cost) {
+
+        final long needed = queuedCost + cost - maxQueuedCost;
+        if (needed <= 0)
+            return Collections.emptyList();
+
+        Issuer heaviest = null;
+        for (Issuer candidate : backlogged) {
+            if (null == heaviest || share(candidate) > share(heaviest))
+                heaviest = candidate;
+        }
+
+        // Never shed an issuer's work to admit more of its own, or to admit an issuer that would end up using more
+        // of the queue than the one it displaces, or if shedding all of it still wouldn't make enough room
+        final Issuer requester = issuers.get(issuer);
+        final double requesterShare = (double) ((null == requester ? 0 : requester.queuedCost) + cost) / weightOf(issuer);
+        if (null == heaviest || Objects.equals(heaviest.name, issuer) || share(heaviest) <= requesterShare
+                || heaviest.queuedCost < needed)
+            return null;
+
+        final List<Task> shed = new ArrayList<>();
+        long freed = 0;
+        while (freed < needed) {
+            final Task victim = heaviest.queue.removeLast();
+            heaviest.queuedCost -= victim.cost;
+            queuedCost -= victim.cost;
+            freed += victim.cost;
+            shed.add(victim);
+        }
+
+        if (heaviest.queue.isEmpty()) {
+            backlogged.remove(heaviest);
+            issuers.remove(heaviest.name);
+        } else {
+            heaviest.lastFinishTag = heaviest.queue.getLast().finishTag;
+        }
+
+        return shed;
+    }
+
+    private void enqueue(String issuer, Task task) {
+
+        final Issuer entry = issuers.computeIfAbsent(issuer, Issuer::new);
+
+        // An issuer's work finishes, in virtual time, cost / weight after its previous work or after the work being
+        // verified now, whichever is later
+        task.finishTag = Math.max(virtualTime, entry.lastFinishTag) + (double) task.cost / weightOf(issuer);
+        entry.lastFinishTag = task.finishTag;
+
+        final boolean wasIdle = entry.queue.isEmpty();
+        entry.queue.addLast(task);
+        entry.queuedCost += task.cost;
+        queuedCost += task.cost;
+
+        if (wasIdle)
+            backlogged.add(entry);
+    }
+
+    /**
+     * Take the queued task with the earliest finish tag, or stop counting the calling worker as active and return null
+     * if there isn't one.
+     */
+    private synchronized Task next() {
+
+        final Issuer entry = backlogged.poll();
+        if (null == entry) {
+            active--;
+            return null;
+        }
+
+        final Task task = entry.queue.removeFirst();
+        entry.queuedCost -= task.cost;
+        queuedCost -= task.cost;
+        virtualTime = task.finishTag;
+
+        if (entry.queue.isEmpty())
+            issuers.remove(entry.name);
+        else
+            backlogged.add(entry);
+
+        return task;
+    }
+
+    private void work() {
+
+        Task task;
+        while (null != (task = next())) {
+
+            // The caller may have given up on the result already
+            if (task.future.isDone())
+                continue;
+
+            try {
+                final VerificationResult result = (System.nanoTime() - task.deadline >= 0)
+                        ? VerificationResult.rejected("The deadline passed before the JWP was verified")
+                        : task.algorithm.validate(task.jwp, task.deadline);
+                task.future.complete(result.withProof(task.jwp));
+            } catch (JsonWebProofException e) {
+                task.future.complete(VerificationResult.of(e).withProof(task.jwp));
+            } catch (RuntimeException e) {
+                // An algorithm that can't cope with a JWP hasn't verified it; the caller still gets a result
+                task.future.complete(VerificationResult.invalid("Unable to verify JWP", e).withProof(task.jwp));
+            }
+        }
+    }
+
+    private double share(Issuer issuer) {
+        return (double) issuer.queuedCost / weightOf(issuer.name);
+    }
+
+    private int weightOf(String issuer) {
+        return weights.getOrDefault(issuer, 1);
+    }
+
+    private static final class Issuer {
+
+        final String name;
+        final Deque<Task> queue = new ArrayDeque<>();
+        long queuedCost;
+        double lastFinishTag;
+
+        Issuer(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Task {
+
+        final JsonWebProof jwp;
+        final JsonProofAlgorithm algorithm;
+        final long cost;
+        final long deadline;
+        final CompletableFuture<VerificationResult> future = new CompletableFuture<>();
+        double finishTag;
+
+        Task(JsonWebProof jwp, JsonProofAlgorithm algorithm, long cost, long deadline) {
+            this.jwp = jwp;
+            this.algorithm = algorithm;
+            this.cost = cost;
+            this.deadline = deadline;
+        }
+    }
+
+}
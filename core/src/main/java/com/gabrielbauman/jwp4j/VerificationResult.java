@@ -0,0 +1,147 @@
+package com.gabrielbauman.jwp4j;
+
+/**
+ * The outcome of parsing and/or verifying a {@link JsonWebProof}: either valid, or a failure {@link Code} and message.
+ * Failures are plain values, so rejecting a junk token costs about as much as accepting a good one. Code that prefers
+ * exceptions can call {@link #throwIfInvalid()}, which throws a stackless exception of the matching type.
+ */
+public final class VerificationResult {
+
+    public enum Code {
+
+        /**
+         * The JWP was parsed and its proof is valid.
+         */
+        VALID,
+
+        /**
+         * The JWP couldn't be parsed. Thrown as {@link JsonWebProofException}.
+         */
+        MALFORMED,
+
+        /**
+         * The JWP's proof is invalid. Thrown as {@link InvalidProofException}.
+         */
+        INVALID,
+
+        /**
+         * The JWP's proof couldn't be checked, for example because the issuer key is unknown. Thrown as
+         * {@link UnverifiableProofException}.
+         */
+        UNVERIFIABLE,
+
+        /**
+         * The JWP's proof wasn't checked (or wasn't checked completely) because the verifier was overloaded or the
+         * request's deadline passed. Thrown as {@link UnverifiableProofException}.
+         */
+        REJECTED
+    }
+
+    private static final VerificationResult VALID = new VerificationResult(Code.VALID, null, null, null);
+
+    private final Code code;
+    private final String message;
+    private final Throwable cause;
+    private final JsonWebProof proof;
+
+    private VerificationResult(Code code, String message, Throwable cause, JsonWebProof proof) {
+        this.code = code;
+        this.message = message;
+        this.cause = cause;
+        this.proof = proof;
+    }
+
+    public static VerificationResult valid() {
+        return VALID;
+    }
+
+    public static VerificationResult malformed(String message) {
+        return new VerificationResult(Code.MALFORMED, message, null, null);
+    }
+
+    public static VerificationResult malformed(String message, Throwable cause) {
+        return new VerificationResult(Code.MALFORMED, message, cause, null);
+    }
+
+    public static VerificationResult invalid(String message) {
+        return new VerificationResult(Code.INVALID, message, null, null);
+    }
+
+    public static VerificationResult invalid(String message, Throwable cause) {
+        return new VerificationResult(Code.INVALID, message, cause, null);
+    }
+
+    public static VerificationResult unverifiable(String message) {
+        return new VerificationResult(Code.UNVERIFIABLE, message, null, null);
+    }
+
+    public static VerificationResult rejected(String message) {
+        return new VerificationResult(Code.REJECTED, message, null, null);
+    }
+
+    /**
+     * @return the result matching the type of a thrown {@link JsonWebProofException}
+     */
+    public static VerificationResult of(JsonWebProofException exception) {
+        final Code code = (exception instanceof InvalidProofException)
+                ? Code.INVALID
+                : (exception instanceof UnverifiableProofException) ? Code.UNVERIFIABLE : Code.MALFORMED;
+        return new VerificationResult(code, exception.getMessage(), exception.getCause(), null);
+    }
+
+    /**
+     * @return a copy of this result carrying the JWP it describes
+     */
+    VerificationResult withProof(JsonWebProof proof) {
+        return (this.proof == proof) ? this : new VerificationResult(code, message, cause, proof);
+    }
+
+    public boolean isValid() {
+        return code == Code.VALID;
+    }
+
+    public Code getCode() {
+        return code;
+    }
+
+    /**
+     * @return a description of the failure, or null if the result is valid
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the JWP this result describes, or null if it's unknown or the JWP couldn't be parsed
+     */
+    public JsonWebProof getProof() {
+        return proof;
+    }
+
+    /**
+     * Throw a stackless exception describing this result if it isn't valid.
+     *
+     * @throws JsonWebProofException      if the result is {@link Code#MALFORMED}
+     * @throws InvalidProofException      if the result is {@link Code#INVALID}
+     * @throws UnverifiableProofException if the result is {@link Code#UNVERIFIABLE} or {@link Code#REJECTED}
+     */
+    public void throwIfInvalid() {
+        switch (code) {
+            case VALID:
+                return;
+            case INVALID:
+                throw new InvalidProofException(message, cause, false, false);
+            case UNVERIFIABLE:
+            case REJECTED:
+                throw new UnverifiableProofException(message, cause, false, false);
+            default:
+                throw new JsonWebProofException(message, cause, false, false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "VALID" : code + ": " + message;
+    }
+
+}
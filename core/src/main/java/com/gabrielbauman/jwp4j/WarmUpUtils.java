@@ -0,0 +1,26 @@
+package com.gabrielbauman.jwp4j;
+
+interface WarmUpUtils {
+
+    /**
+     * Issue, serialize, parse, verify, derive and present synthetic JWPs with an algorithm that can do all of those,
+     * so that the code real requests run is loaded and compiled before they arrive.
+     *
+     * @throws JsonWebProofException if a synthetic JWP doesn't verify, which means the algorithm is misconfigured
+     */
+    static void runSyntheticCycles(JsonProofAlgorithm algorithm, int cycles) {
+
+        for (int i = 0; i < cycles; i++) {
+
+            final JsonWebProof issued = JsonWebProof.parse(algorithm, algorithm.issue("warm-up", i, true).serialize());
+            algorithm.verify(issued);
+
+            final JsonWebProof presented = JsonWebProof.parse(algorithm, algorithm.derive(issued, 0, 2).serialize());
+            algorithm.verify(presented);
+
+            // Read the payloads too, which decompresses them if they're compressed
+            presented.getPayloads().toArray();
+        }
+    }
+
+}
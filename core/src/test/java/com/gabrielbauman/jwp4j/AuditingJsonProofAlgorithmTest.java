@@ -0,0 +1,93 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AuditingJsonProofAlgorithmTest {
+
+    private static final String ALG_VALUE = "DUMMY";
+
+    @Test
+    public void testEveryVerificationIsRecorded() {
+
+        List<VerificationResult> recorded = new ArrayList<>();
+        JsonProofAlgorithm algorithm = new AuditingJsonProofAlgorithm(dummyAlgorithm(),
+                (jwp, result, timestamp) -> recorded.add(result.withProof(jwp)));
+
+        JsonWebProof good = algorithm.issue(1, 2);
+        JsonWebProof bad = new JsonWebProof(Map.of("alg", ALG_VALUE), null, List.of(1), new byte[]{1});
+
+        algorithm.verify(good);
+        assertThatThrownBy(() -> algorithm.verify(bad))
+                .isInstanceOf(InvalidProofException.class);
+        assertThat(JsonWebProof.verify(algorithm, good.serialize()).isValid())
+                .isTrue();
+
+        assertThat(recorded).extracting(VerificationResult::getCode)
+                .containsExactly(VerificationResult.Code.VALID, VerificationResult.Code.INVALID, VerificationResult.Code.VALID);
+        assertThat(recorded.get(1).getProof())
+                .isSameAs(bad);
+    }
+
+    @Test
+    public void testVerificationsThatThrowAreRecorded() {
+
+        List<VerificationResult> recorded = new ArrayList<>();
+        JsonProofAlgorithm algorithm = new AuditingJsonProofAlgorithm(dummyAlgorithm(),
+                (jwp, result, timestamp) -> recorded.add(result.withProof(jwp)));
+
+        JsonWebProof throwing = new JsonWebProof(Map.of("alg", ALG_VALUE), null, List.of(1), new byte[]{2});
+
+        assertThatThrownBy(() -> algorithm.validate(throwing))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> algorithm.validate(throwing, System.nanoTime() + 1_000_000_000L))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(recorded).extracting(VerificationResult::getCode)
+                .containsExactly(VerificationResult.Code.INVALID, VerificationResult.Code.INVALID);
+        assertThat(recorded).extracting(VerificationResult::getProof)
+                .containsOnly(throwing);
+    }
+
+    private static JsonProofAlgorithm dummyAlgorithm() {
+
+        return new JsonProofAlgorithm() {
+
+            @Override
+            public boolean handles(String alg) {
+                return alg.equals(ALG_VALUE);
+            }
+
+            @Override
+            public JsonWebProof issue(Object... payloads) {
+                return new JsonWebProof(
+                        Map.of("alg", ALG_VALUE),
+                        null,
+                        Arrays.asList(payloads),
+                        ALG_VALUE.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void verify(JsonWebProof jwp) {
+                if (Arrays.equals(jwp.proof, new byte[]{2}))
+                    throw new IllegalStateException("Unexpected failure");
+                if (!Arrays.equals(jwp.proof, ALG_VALUE.getBytes(StandardCharsets.UTF_8)))
+                    throw new InvalidProofException("Wrong proof");
+            }
+        };
+    }
+
+}
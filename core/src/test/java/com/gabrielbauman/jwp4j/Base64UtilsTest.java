@@ -0,0 +1,93 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class Base64UtilsTest {
+
+    private static final Base64.Encoder JDK_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    @Test
+    public void testRangesMatchJdkEncoding() {
+
+        Random random = new Random(42);
+
+        for (int length = 0; length < 64; length++) {
+
+            byte[] raw = new byte[length];
+            random.nextBytes(raw);
+            String expected = JDK_ENCODER.encodeToString(raw);
+
+            // Encode from the middle of a larger array, into the middle of a larger array
+            byte[] source = new byte[length + 6];
+            System.arraycopy(raw, 0, source, 3, length);
+            byte[] encoded = new byte[Base64Utils.encodedLength(length) + 4];
+            int written = Base64Utils.encode(source, 3, length, encoded, 2);
+            assertThat(new String(encoded, 2, written)).isEqualTo(expected);
+
+            StringBuilder builder = new StringBuilder("x.");
+            Base64Utils.encode(source, 3, length, builder);
+            assertThat(builder.toString()).isEqualTo("x." + expected);
+
+            // Decode a range out of a larger string, with and without padding
+            String padded = Base64.getUrlEncoder().encodeToString(raw);
+            assertThat(Base64Utils.decode("a." + expected + ".b", 2, 2 + expected.length())).isEqualTo(raw);
+            assertThat(Base64Utils.decode("a." + padded + ".b", 2, 2 + padded.length())).isEqualTo(raw);
+
+            byte[] decoded = new byte[length + 1];
+            byte[] encodedBytes = expected.getBytes();
+            assertThat(Base64Utils.decode(encodedBytes, 0, encodedBytes.length, decoded, 1)).isEqualTo(length);
+            assertThat(Arrays.copyOfRange(decoded, 1, length + 1)).isEqualTo(raw);
+        }
+    }
+
+    @Test
+    public void testByteBuffers() {
+
+        byte[] raw = "The quick brown fox jumps over the lazy dog".getBytes();
+        String expected = JDK_ENCODER.encodeToString(raw);
+
+        for (boolean direct : new boolean[]{false, true}) {
+
+            ByteBuffer source = allocate(raw.length, direct).put(raw).flip();
+            ByteBuffer encoded = allocate(Base64Utils.encodedLength(raw.length), direct);
+            Base64Utils.encode(source, encoded);
+
+            assertThat(source.hasRemaining()).isFalse();
+            assertThat(encoded.hasRemaining()).isFalse();
+
+            byte[] encodedBytes = new byte[encoded.flip().remaining()];
+            encoded.get(encodedBytes);
+            assertThat(new String(encodedBytes)).isEqualTo(expected);
+
+            ByteBuffer decoded = allocate(raw.length, direct);
+            Base64Utils.decode(encoded.flip(), decoded);
+
+            byte[] decodedBytes = new byte[decoded.flip().remaining()];
+            decoded.get(decodedBytes);
+            assertThat(decodedBytes).isEqualTo(raw);
+        }
+    }
+
+    @Test
+    public void testRejectsIllegalInput() {
+        assertThatThrownBy(() -> Base64Utils.decode("ab+d", 0, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Base64Utils.decode("abcde", 0, 5))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Base64Utils.decode("abcd", 2, 6))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+}
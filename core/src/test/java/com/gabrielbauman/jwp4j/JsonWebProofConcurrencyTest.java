@@ -0,0 +1,117 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Shares freshly constructed and freshly parsed {@link JsonWebProof} instances between threads that all hit the lazily
+ * computed state at the same moment, and checks that every thread sees the same, complete values.
+ */
+public class JsonWebProofConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 500;
+
+    private static final JsonProofAlgorithmResolver RESOLVER = alg -> new JsonProofAlgorithm() {
+
+        @Override
+        public boolean handles(String alg) {
+            return true;
+        }
+
+        @Override
+        public void verify(JsonWebProof jwp) {
+        }
+
+        @Override
+        public JsonWebProof issue(Object... payloads) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @Test
+    public void testConcurrentLazySerialization() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+
+                JsonWebProof constructed = new JsonWebProof(
+                        Map.of("alg", "CONCURRENT", "round", round),
+                        (round % 2 == 0) ? Map.of("nonce", "n" + round) : null,
+                        Arrays.asList("Gabriel", round, true, "Bauman"),
+                        ("proof" + round).getBytes(StandardCharsets.UTF_8));
+
+                String expected = hammer(executor, constructed);
+
+                // A parsed copy shared between threads must agree with the original
+                assertThat(hammer(executor, JsonWebProof.parse(RESOLVER, expected)))
+                        .isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    /**
+     * Release all threads against the same instance at once and return the one compact form they all agree on.
+     */
+    private static String hammer(ExecutorService executor, JsonWebProof jwp) throws Exception {
+
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        Set<String> results = ConcurrentHashMap.newKeySet();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                barrier.await();
+
+                // Mix up the order in which the lazy state is first touched
+                String encodedIssuerHeader;
+                String serialized;
+                if (thread % 2 == 0) {
+                    encodedIssuerHeader = jwp.getEncodedIssuerHeader();
+                    serialized = jwp.serialize();
+                } else {
+                    serialized = jwp.serialize();
+                    encodedIssuerHeader = jwp.getEncodedIssuerHeader();
+                }
+
+                assertThat(serialized).startsWith(encodedIssuerHeader + ".");
+                assertThat(jwp.getIssuerHeaderJson()).contains("\"alg\":\"CONCURRENT\"");
+                results.add(serialized);
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(results).hasSize(1);
+        return results.iterator().next();
+    }
+
+}
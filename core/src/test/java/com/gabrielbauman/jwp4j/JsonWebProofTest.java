@@ -4,12 +4,17 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class JsonWebProofTest {
 
+    private static final String ALG_VALUE = "DUMMY";
+
     @Test
     public void testSerializationRoundTrip() {
 
@@ -73,4 +78,199 @@ public class JsonWebProofTest {
                 .containsExactlyElementsOf(constructed.getPayloads());
     }
 
+    @Test
+    public void testParsePolicy() {
+
+        JsonProofAlgorithm algorithm = dummyAlgorithm();
+        String compactForm = algorithm.issue(1, 2, 3).serialize();
+
+        assertThatNoException().isThrownBy(() ->
+                JsonWebProof.parse(algorithm, compactForm, JsonWebProofParsePolicy.DEFAULT
+                        .withMaxTokenLength(compactForm.length())
+                        .withMaxPayloadCount(3)
+                        .withMaxHeaderSize(64)
+                        .withAllowedAlgs(ALG_VALUE)));
+
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, compactForm,
+                JsonWebProofParsePolicy.DEFAULT.withMaxTokenLength(compactForm.length() - 1)))
+                .isInstanceOf(JsonWebProofException.class);
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, compactForm,
+                JsonWebProofParsePolicy.DEFAULT.withMaxPayloadCount(2)))
+                .isInstanceOf(JsonWebProofException.class);
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, compactForm,
+                JsonWebProofParsePolicy.DEFAULT.withMaxHeaderSize(8)))
+                .isInstanceOf(JsonWebProofException.class);
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, compactForm,
+                JsonWebProofParsePolicy.DEFAULT.withAllowedAlgs("SU-ES256")))
+                .isInstanceOf(InvalidProofException.class);
+    }
+
+    @Test
+    public void testStructuralPreChecks() {
+
+        JsonProofAlgorithm algorithm = dummyAlgorithm();
+        String compactForm = algorithm.issue(1, 2, 3).serialize();
+
+        // Wrong number of parts
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, "abc.def"))
+                .isInstanceOf(JsonWebProofException.class);
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, "a.b.c.d.e"))
+                .isInstanceOf(JsonWebProofException.class);
+
+        // Characters outside the base64url alphabet
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, compactForm.replaceFirst("\\.", "+.")))
+                .isInstanceOf(JsonWebProofException.class);
+
+        // Payload separators outside the payloads part
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, "~" + compactForm))
+                .isInstanceOf(JsonWebProofException.class);
+
+        // A proof the algorithm says can't be valid is rejected before it's decoded
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, compactForm + "AAAA"))
+                .isInstanceOf(InvalidProofException.class);
+    }
+
+    @Test
+    public void testVerificationResults() {
+
+        JsonProofAlgorithm algorithm = dummyAlgorithm();
+        String compactForm = algorithm.issue(1, 2, 3).serialize();
+
+        assertThat(JsonWebProof.verify(algorithm, compactForm).isValid())
+                .isTrue();
+        assertThat(JsonWebProof.verify(algorithm, "not a jwp").getCode())
+                .isEqualTo(VerificationResult.Code.MALFORMED);
+        assertThat(JsonWebProof.verify(alg -> null, compactForm).getCode())
+                .isEqualTo(VerificationResult.Code.INVALID);
+
+        // Parse failures are thrown without stack traces
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, "not a jwp"))
+                .isInstanceOf(JsonWebProofException.class)
+                .satisfies(e -> assertThat(e.getStackTrace()).isEmpty());
+    }
+
+    @Test
+    public void testJunkThatPassesThePreChecksIsMalformed() {
+
+        JsonProofAlgorithm algorithm = dummyAlgorithm();
+        String[] parts = algorithm.issue(1, 2, 3).serialize().split("\\.");
+        String header = parts[0];
+        String payloads = parts[1];
+        String proof = parts[2];
+
+        // Each of these is rejected by a check rather than by catching a decoding exception
+        assertThat(JsonWebProof.verify(algorithm, header + "." + payloads + "~AAAAA." + proof).getMessage())
+                .contains("impossible length");
+        assertThat(JsonWebProof.verify(algorithm, Base64Utils.encode("not json") + "." + payloads + "." + proof).getMessage())
+                .isEqualTo("Unable to decode issuer header");
+        assertThat(JsonWebProof.verify(algorithm, Base64Utils.encode("{\"alg\":\"" + ALG_VALUE + "\",\"alg\":\"" + ALG_VALUE + "\"}")
+                + "." + payloads + "." + proof).getMessage())
+                .isEqualTo("Unable to decode issuer header");
+        assertThat(JsonWebProof.verify(algorithm, header + "." + Base64Utils.encode("[1]") + "." + payloads + "." + proof).getMessage())
+                .isEqualTo("Unable to decode presentation header");
+
+        // Payloads that look like numbers but don't fit the usual types are still decoded
+        String numbers = Base64Utils.encode("99999999999999999999") + "~" + Base64Utils.encode("1.2.3") + "~" + Base64Utils.encode(".");
+        VerificationResult decoded = JsonWebProof.verify(algorithm, header + "." + numbers + "." + proof);
+        assertThat(decoded.isValid())
+                .isTrue();
+        assertThat(decoded.getProof().getPayloads())
+                .hasSize(3)
+                .endsWith("1.2.3", ".");
+    }
+
+    @Test
+    public void testCompressedPayloads() {
+
+        JsonProofAlgorithm algorithm = dummyAlgorithm();
+
+        String large = "x".repeat(4096);
+        String bomb = "0".repeat(4 * 1024 * 1024);
+        Map<String, Object> issuerHeader = new LinkedHashMap<>(Map.of("alg", ALG_VALUE));
+        JsonWebProof.putCompressionHeader(issuerHeader);
+
+        JsonWebProof compressed = new JsonWebProof(issuerHeader, null,
+                JsonWebProof.issuedPayloads(true, large, 42, bomb), ALG_VALUE.getBytes(StandardCharsets.UTF_8));
+
+        // The wire form carries the compressed bytes, and that's what proofs cover
+        String compactForm = compressed.serialize();
+        assertThat(compactForm.length())
+                .isLessThan((large.length() + bomb.length()) / 100);
+        assertThat(compressed.getPayloadBytes(0))
+                .isEqualTo(CompressionUtils.deflate(("\"" + large + "\"").getBytes(StandardCharsets.UTF_8)));
+
+        // Payloads are only decompressed when they're read, within the policy's limit
+        JsonWebProof parsed = JsonWebProof.parse(algorithm, compactForm);
+        assertThat(parsed.getPayloadBytes(1))
+                .isEqualTo(compressed.getPayloadBytes(1));
+        assertThat(parsed.getPayloads().get(0)).isEqualTo(large);
+        assertThat(parsed.getPayloads().get(1)).isEqualTo(42);
+        assertThatThrownBy(() -> parsed.getPayloads().get(2))
+                .isInstanceOf(JsonWebProofException.class)
+                .hasMessageContaining("expands to more than");
+
+        JsonWebProof tight = JsonWebProof.parse(algorithm, compactForm,
+                JsonWebProofParsePolicy.DEFAULT.withMaxDecompressedPayloadSize(1024));
+        assertThatThrownBy(() -> tight.getPayloads().get(0))
+                .isInstanceOf(JsonWebProofException.class);
+        assertThat(tight.getPayloads().get(1)).isEqualTo(42);
+
+        // Withheld payloads stay empty, and disclosed ones keep their compressed bytes
+        JsonWebProof presented = JsonWebProof.splicePresentation(parsed, new boolean[]{false, true, false},
+                Map.of("nonce", "n"), "{\"nonce\":\"n\"}", ALG_VALUE.getBytes(StandardCharsets.UTF_8));
+        assertThat(presented.isWithheld(0)).isTrue();
+        assertThat(presented.getPayloadBytes(1)).isEqualTo(parsed.getPayloadBytes(1));
+        assertThat(JsonWebProof.parse(algorithm, presented.serialize()).getPayloads())
+                .containsExactly(null, 42, null);
+
+        // Corrupt or unknown compression is rejected
+        String[] parts = compactForm.split("\\.");
+        assertThatThrownBy(() -> JsonWebProof.parse(algorithm, parts[0] + ".AAAA." + parts[2]).getPayloads().get(0))
+                .isInstanceOf(JsonWebProofException.class);
+        String unknownZip = Base64Utils.encode("{\"alg\":\"" + ALG_VALUE + "\",\"zip\":\"GZ\"}") + "." + parts[1] + "." + parts[2];
+        assertThat(JsonWebProof.verify(algorithm, unknownZip).getCode())
+                .isEqualTo(VerificationResult.Code.MALFORMED);
+    }
+
+    private static JsonProofAlgorithm dummyAlgorithm() {
+
+        // Construct a dummy algorithm
+        return new JsonProofAlgorithm() {
+
+            @Override
+            public boolean handles(String alg) {
+                return alg.equals(ALG_VALUE);
+            }
+
+            @Override
+            public boolean acceptsProofLength(String alg, boolean presentationForm, int payloadCount, int disclosedPayloadCount, int proofLength) {
+                return proofLength == ALG_VALUE.length();
+            }
+
+            @Override
+            public JsonWebProof issue(Object... payloads) {
+                return new JsonWebProof(
+                        Map.of("alg",ALG_VALUE),
+                        null,
+                        Arrays.asList(payloads),
+                        ALG_VALUE.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+                return new JsonWebProof(
+                        Map.of("alg",ALG_VALUE),
+                        Map.of("nonce", "DUMMY"),
+                        issuedFormJwp.payloads,
+                        ALG_VALUE.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void verify(JsonWebProof jwp) {
+                if (!Arrays.equals(jwp.proof, ALG_VALUE.getBytes(StandardCharsets.UTF_8)))
+                    throw new InvalidProofException();
+            }
+        };
+    }
+
 }
@@ -0,0 +1,314 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonWebProofVerificationProcessorTest {
+
+    private static final String ALG_VALUE = "DUMMY";
+
+    @Test
+    public void testOrderedResults() throws Exception {
+
+        JsonProofAlgorithm algorithm = slowAlgorithm();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            inputs.add(algorithm.issue(i, i % 10 != 0).serialize());
+        }
+        inputs.add("not a jwp");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            JsonWebProofVerificationProcessor<String> processor =
+                    JsonWebProofVerificationProcessor.ofStrings(alg -> algorithm, executor, 4, 16, true);
+
+            List<JsonWebProofVerificationProcessor.Result<String>> results = run(inputs, processor, Long.MAX_VALUE);
+
+            assertThat(results).extracting(JsonWebProofVerificationProcessor.Result::getInput)
+                    .containsExactlyElementsOf(inputs);
+
+            for (int i = 0; i < 200; i++) {
+                assertThat(results.get(i).isValid()).isEqualTo(i % 10 != 0);
+                assertThat(results.get(i).getProof().getPayloads().get(0)).isEqualTo(i);
+            }
+
+            assertThat(results.get(200).isValid()).isFalse();
+            assertThat(results.get(200).getProof()).isNull();
+            assertThat(results.get(200).getVerificationResult().getCode()).isEqualTo(VerificationResult.Code.MALFORMED);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnorderedResults() throws Exception {
+
+        JsonProofAlgorithm algorithm = slowAlgorithm();
+        List<byte[]> inputs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            inputs.add(algorithm.issue(i, true).serialize().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            JsonWebProofVerificationProcessor<byte[]> processor =
+                    JsonWebProofVerificationProcessor.ofBytes(alg -> algorithm, executor, 4, 8, false);
+
+            List<JsonWebProofVerificationProcessor.Result<byte[]>> results = run(inputs, processor, 1);
+
+            assertThat(results).hasSize(100).allMatch(JsonWebProofVerificationProcessor.Result::isValid);
+            assertThat(results).extracting(result -> (Integer) result.getProof().getPayloads().get(0))
+                    .containsExactlyInAnyOrderElementsOf(IntStream.range(0, 100).boxed().collect(Collectors.toList()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnexpectedExceptionsDontStallTheStream() throws Exception {
+
+        JsonProofAlgorithm slow = slowAlgorithm();
+        JsonProofAlgorithm throwing = new JsonProofAlgorithm() {
+
+            @Override
+            public boolean handles(String alg) {
+                return slow.handles(alg);
+            }
+
+            @Override
+            public JsonWebProof issue(Object... payloads) {
+                return slow.issue(payloads);
+            }
+
+            @Override
+            public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void verify(JsonWebProof jwp) {
+                if (Integer.valueOf(1).equals(jwp.getPayloads().get(0)))
+                    throw new IllegalStateException("Broken algorithm");
+                slow.verify(jwp);
+            }
+        };
+
+        List<String> inputs = Arrays.asList(
+                throwing.issue(0, true).serialize(),
+                throwing.issue(1, true).serialize(),
+                null,
+                throwing.issue(2, true).serialize());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            JsonWebProofVerificationProcessor<String> processor =
+                    JsonWebProofVerificationProcessor.ofStrings(alg -> throwing, executor, 2, 4, true);
+
+            List<JsonWebProofVerificationProcessor.Result<String>> results = run(inputs, processor, Long.MAX_VALUE);
+
+            assertThat(results).extracting(JsonWebProofVerificationProcessor.Result::getInput)
+                    .containsExactlyElementsOf(inputs);
+            assertThat(results.get(0).isValid()).isTrue();
+            assertThat(results.get(1).getVerificationResult().getCode()).isEqualTo(VerificationResult.Code.INVALID);
+            assertThat(results.get(2).isValid()).isFalse();
+            assertThat(results.get(3).isValid()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+
+        JsonProofAlgorithm algorithm = slowAlgorithm();
+        String compactForm = algorithm.issue(1, true).serialize();
+        AtomicLong requestedFromSource = new AtomicLong();
+
+        // An endless source that counts how many items have been requested from it
+        Flow.Publisher<String> source = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requestedFromSource.addAndGet(n);
+                for (long i = 0; i < n; i++) {
+                    subscriber.onNext(compactForm);
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            JsonWebProofVerificationProcessor<String> processor =
+                    JsonWebProofVerificationProcessor.ofStrings(alg -> algorithm, executor, 2, 10, true);
+
+            List<JsonWebProofVerificationProcessor.Result<String>> received = new ArrayList<>();
+            Flow.Subscription[] downstream = new Flow.Subscription[1];
+
+            processor.subscribe(new Flow.Subscriber<>() {
+                public void onSubscribe(Flow.Subscription subscription) {
+                    downstream[0] = subscription;
+                }
+
+                public void onNext(JsonWebProofVerificationProcessor.Result<String> item) {
+                    synchronized (received) {
+                        received.add(item);
+                    }
+                }
+
+                public void onError(Throwable throwable) {
+                }
+
+                public void onComplete() {
+                }
+            });
+            source.subscribe(processor);
+
+            // Without downstream demand, the processor stops at maxInFlight
+            TimeUnit.MILLISECONDS.sleep(200);
+            assertThat(requestedFromSource.get()).isEqualTo(10);
+
+            // Each delivered result lets exactly one more item in
+            downstream[0].request(5);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (receivedCount(received) < 5 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+
+            assertThat(receivedCount(received)).isEqualTo(5);
+            assertThat(requestedFromSource.get()).isEqualTo(15);
+
+            downstream[0].cancel();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int receivedCount(List<?> received) {
+        synchronized (received) {
+            return received.size();
+        }
+    }
+
+    private static <T> List<JsonWebProofVerificationProcessor.Result<T>> run(
+            List<T> inputs, JsonWebProofVerificationProcessor<T> processor, long batchSize) throws Exception {
+
+        CompletableFuture<List<JsonWebProofVerificationProcessor.Result<T>>> done = new CompletableFuture<>();
+
+        processor.subscribe(new Flow.Subscriber<>() {
+
+            private final List<JsonWebProofVerificationProcessor.Result<T>> results = new ArrayList<>();
+            private Flow.Subscription subscription;
+            private long remaining;
+
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                this.remaining = batchSize;
+                subscription.request(batchSize);
+            }
+
+            public void onNext(JsonWebProofVerificationProcessor.Result<T> item) {
+                results.add(item);
+                if (--remaining == 0) {
+                    remaining = batchSize;
+                    subscription.request(batchSize);
+                }
+            }
+
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            public void onComplete() {
+                done.complete(results);
+            }
+        });
+
+        // A simple synchronous source that honours demand
+        processor.onSubscribe(new Flow.Subscription() {
+
+            private int next;
+            private boolean emitting;
+            private long demand;
+
+            @Override
+            public synchronized void request(long n) {
+                demand += n;
+                if (emitting)
+                    return;
+                emitting = true;
+                while (demand > 0 && next < inputs.size()) {
+                    demand--;
+                    processor.onNext(inputs.get(next++));
+                }
+                emitting = false;
+                if (next == inputs.size()) {
+                    next++;
+                    processor.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        return done.get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A dummy algorithm that takes a random amount of time to verify, and rejects JWPs whose second payload is false.
+     */
+    private static JsonProofAlgorithm slowAlgorithm() {
+
+        return new JsonProofAlgorithm() {
+
+            @Override
+            public boolean handles(String alg) {
+                return alg.equals(ALG_VALUE);
+            }
+
+            @Override
+            public JsonWebProof issue(Object... payloads) {
+                return new JsonWebProof(
+                        Map.of("alg", ALG_VALUE),
+                        null,
+                        Arrays.asList(payloads),
+                        ALG_VALUE.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void verify(JsonWebProof jwp) {
+                LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(2)));
+                if (Boolean.FALSE.equals(jwp.getPayloads().get(1)))
+                    throw new InvalidProofException();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VerificationEngineTest {
+
+    private static final String ALG_VALUE = "DUMMY";
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+    private final List<String> verified = Collections.synchronizedList(new ArrayList<>());
+    private final JsonProofAlgorithm algorithm = dummyAlgorithm(verified);
+
+    @Test
+    public void testVerifiesJwps() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            VerificationEngine engine = new VerificationEngine(alg -> algorithm, executor, 4, 1000);
+
+            List<CompletableFuture<VerificationResult>> results = IntStream.range(0, 100)
+                    .mapToObj(i -> engine.submit(jwp("jwp-" + i), "issuer-" + (i % 3), TIMEOUT))
+                    .collect(Collectors.toList());
+
+            assertThat(results).allSatisfy(result -> assertThat(result.join().isValid()).isTrue());
+            assertThat(engine.submit(new JsonWebProof(Map.of("alg", ALG_VALUE), null, List.of(1), new byte[]{1}), "issuer", TIMEOUT).join().getCode())
+                    .isEqualTo(VerificationResult.Code.INVALID);
+            assertThat(engine.submit("not a jwp", "issuer", TIMEOUT).join().getCode())
+                    .isEqualTo(VerificationResult.Code.MALFORMED);
+            assertThat(engine.submit(jwp("serialized").serialize(), "issuer", TIMEOUT).join().isValid())
+                    .isTrue();
+            assertThat(engine.getQueuedCost())
+                    .isZero();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadIsShedFromTheHeaviestIssuer() {
+
+        ManualExecutor executor = new ManualExecutor();
+        VerificationEngine engine = new VerificationEngine(alg -> algorithm, executor, 1, 10);
+
+        // Each JWP costs 4: three payloads plus the headers
+        CompletableFuture<VerificationResult> first = engine.submit(jwp("a1"), "noisy", TIMEOUT);
+        CompletableFuture<VerificationResult> second = engine.submit(jwp("a2"), "noisy", TIMEOUT);
+        CompletableFuture<VerificationResult> third = engine.submit(jwp("a3"), "noisy", TIMEOUT);
+
+        // The noisy issuer can't push out its own work
+        assertThat(third.join().getCode())
+                .isEqualTo(VerificationResult.Code.REJECTED);
+
+        // But a quiet issuer pushes out the noisy issuer's newest work
+        CompletableFuture<VerificationResult> quiet = engine.submit(jwp("b1"), "quiet", TIMEOUT);
+        assertThat(second.join().getCode())
+                .isEqualTo(VerificationResult.Code.REJECTED);
+        assertThat(second.join().getProof().getPayloads())
+                .contains("a2");
+
+        // Nothing can exceed the queue on its own
+        assertThat(engine.submit(jwp(IntStream.range(0, 20).boxed().toArray()), "quiet", TIMEOUT).join().getCode())
+                .isEqualTo(VerificationResult.Code.REJECTED);
+
+        executor.runAll();
+
+        assertThat(first.join().isValid()).isTrue();
+        assertThat(quiet.join().isValid()).isTrue();
+        assertThat(verified).containsExactlyInAnyOrder("a1", "b1");
+    }
+
+    @Test
+    public void testIssuersAreScheduledByWeight() {
+
+        ManualExecutor executor = new ManualExecutor();
+        VerificationEngine engine = new VerificationEngine(alg -> algorithm, executor, 1, 1000);
+        engine.setWeight("heavy", 3);
+
+        for (int i = 0; i < 6; i++)
+            engine.submit(jwp("light-" + i), "light", TIMEOUT);
+        for (int i = 0; i < 2; i++)
+            engine.submit(jwp("heavy-" + i), "heavy", TIMEOUT);
+
+        executor.runAll();
+
+        // The heavy issuer's work arrived last but finishes first; the light issuer's backlog doesn't hold it up
+        assertThat(verified).containsExactly(
+                "heavy-0", "heavy-1", "light-0", "light-1", "light-2", "light-3", "light-4", "light-5");
+    }
+
+    @Test
+    public void testExpiredWorkIsNotVerified() {
+
+        ManualExecutor executor = new ManualExecutor();
+        VerificationEngine engine = new VerificationEngine(alg -> algorithm, executor, 1, 1000);
+
+        CompletableFuture<VerificationResult> expired = engine.submit(jwp("expired"), "issuer", Duration.ZERO);
+        CompletableFuture<VerificationResult> cancelled = engine.submit(jwp("cancelled"), "issuer", TIMEOUT);
+        CompletableFuture<VerificationResult> current = engine.submit(jwp("current"), "issuer", TIMEOUT);
+        cancelled.cancel(false);
+
+        executor.runAll();
+
+        assertThat(expired.join().getCode())
+                .isEqualTo(VerificationResult.Code.REJECTED);
+        assertThatThrownBy(() -> expired.join().throwIfInvalid())
+                .isInstanceOf(UnverifiableProofException.class);
+        assertThat(current.join().isValid())
+                .isTrue();
+        assertThat(verified)
+                .containsExactly("current");
+    }
+
+    @Test
+    public void testDeadWorkDoesNotFillTheQueue() {
+
+        ManualExecutor executor = new ManualExecutor();
+        VerificationEngine engine = new VerificationEngine(alg -> algorithm, executor, 1, 8);
+
+        // Fill the queue with work nobody is waiting for any more
+        CompletableFuture<VerificationResult> expired = engine.submit(jwp("expired"), "issuer", Duration.ZERO);
+        CompletableFuture<VerificationResult> cancelled = engine.submit(jwp("cancelled"), "issuer", TIMEOUT);
+        cancelled.cancel(false);
+
+        CompletableFuture<VerificationResult> current = engine.submit(jwp("current"), "issuer", TIMEOUT);
+
+        // The dead work made way for the new JWP, rather than the new JWP being shed
+        assertThat(expired.join().getCode())
+                .isEqualTo(VerificationResult.Code.REJECTED);
+        assertThat(current.isDone())
+                .isFalse();
+        assertThat(engine.getQueuedCost())
+                .isEqualTo(4);
+
+        executor.runAll();
+
+        assertThat(current.join().isValid())
+                .isTrue();
+        assertThat(verified)
+                .containsExactly("current");
+    }
+
+    @Test
+    public void testRejectedWorkersAreNotLeaked() {
+
+        ManualExecutor executor = new ManualExecutor();
+        VerificationEngine engine = new VerificationEngine(alg -> algorithm, executor, 1, 1000);
+
+        executor.rejecting = true;
+        CompletableFuture<VerificationResult> rejected = engine.submit(jwp("rejected"), "issuer", TIMEOUT);
+        assertThat(rejected.join().getCode())
+                .isEqualTo(VerificationResult.Code.REJECTED);
+
+        // Once the executor accepts work again, so does the engine
+        executor.rejecting = false;
+        CompletableFuture<VerificationResult> accepted = engine.submit(jwp("accepted"), "issuer", TIMEOUT);
+        executor.runAll();
+
+        assertThat(accepted.join().isValid())
+                .isTrue();
+        assertThat(engine.getQueuedCost())
+                .isZero();
+        assertThat(verified)
+                .containsExactly("accepted");
+    }
+
+    @Test
+    public void testUnexpectedExceptionsAreInvalid() {
+
+        ManualExecutor executor = new ManualExecutor();
+        VerificationEngine engine = new VerificationEngine(alg -> algorithm, executor, 1, 1000);
+
+        CompletableFuture<VerificationResult> throwing = engine.submit(jwp("throws"), "issuer", TIMEOUT);
+        CompletableFuture<VerificationResult> after = engine.submit(jwp("after"), "issuer", TIMEOUT);
+
+        executor.runAll();
+
+        assertThat(throwing.join().getCode())
+                .isEqualTo(VerificationResult.Code.INVALID);
+        assertThat(throwing.join().getProof().getPayloads())
+                .contains("throws");
+        assertThat(after.join().isValid())
+                .isTrue();
+    }
+
+    @Test
+    public void testInvalidConfigurationIsRejected() {
+
+        ManualExecutor executor = new ManualExecutor();
+
+        assertThatThrownBy(() -> new VerificationEngine(null, executor, 1, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new VerificationEngine(alg -> algorithm, executor, 0, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new VerificationEngine(alg -> algorithm, executor, 1, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new VerificationEngine(alg -> algorithm, executor, 1, 1).setWeight("issuer", 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * A JWP whose first payload names it, padded to three payloads.
+     */
+    private JsonWebProof jwp(Object... payloads) {
+        List<Object> padded = new ArrayList<>(Arrays.asList(payloads));
+        while (padded.size() < 3)
+            padded.add(0);
+        return new JsonWebProof(Map.of("alg", ALG_VALUE), null, padded, ALG_VALUE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * An executor that runs tasks when told to, so tests can queue work before any of it starts, and can be told to
+     * reject tasks.
+     */
+    private static final class ManualExecutor implements Executor {
+
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        boolean rejecting;
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejecting)
+                throw new RejectedExecutionException("Not accepting tasks");
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while (null != (task = tasks.poll()))
+                task.run();
+        }
+    }
+
+    private static JsonProofAlgorithm dummyAlgorithm(List<String> verified) {
+
+        return new JsonProofAlgorithm() {
+
+            @Override
+            public boolean handles(String alg) {
+                return ALG_VALUE.equals(alg);
+            }
+
+            @Override
+            public JsonWebProof issue(Object... payloads) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public JsonWebProof derive(JsonWebProof issuedFormJwp, int... includePayloadIndexes) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void verify(JsonWebProof jwp) {
+                if ("throws".equals(jwp.payloads.get(0)))
+                    throw new IllegalStateException("Unexpected failure");
+                if (!Arrays.equals(jwp.proof, ALG_VALUE.getBytes(StandardCharsets.UTF_8)))
+                    throw new InvalidProofException("Wrong proof");
+                verified.add(String.valueOf(jwp.payloads.get(0)));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.gabrielbauman.jwp4j;
+
+/**
+ * A fixed-size log-linear histogram of latencies in nanoseconds. Each power-of-two range is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so recorded values are kept to within about 1.6% of their true value
+ * across the whole range of a long. Recording is allocation-free; instances are not thread-safe, so each load thread
+ * records into its own histogram and the results are merged with {@link #add}.
+ */
+final class LatencyHistogram {
+
+    static final int SUB_BUCKETS = 64;
+
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long totalCount;
+    private long maxValue;
+
+    void record(long valueNanos) {
+        long value = Math.max(0, valueNanos);
+        counts[indexOf(value)]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, value);
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @param percentile a percentile between 0 and 100
+     * @return the highest value (to the histogram's precision) at or below which the given percentage of recorded
+     * values fall, or 0 if nothing has been recorded
+     */
+    long getValueAtPercentile(double percentile) {
+
+        if (totalCount == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(highestValueIn(i), maxValue);
+        }
+
+        return maxValue;
+    }
+
+    static int indexOf(long value) {
+
+        // Values below SUB_BUCKETS get a bucket each; above that each power of two gets SUB_BUCKETS buckets.
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int index) {
+
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+        return lowest + (1L << shift) - 1;
+    }
+
+}
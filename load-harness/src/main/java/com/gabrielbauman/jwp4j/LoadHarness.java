@@ -0,0 +1,266 @@
+package com.gabrielbauman.jwp4j;
+
+import org.jose4j.jwk.PublicJsonWebKey;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.gabrielbauman.jwp4j.JoseUtils.generateKeyWithJwsAlgorithm;
+import static java.lang.String.format;
+
+/**
+ * Drives {@link SingleUseJsonProofAlgorithm} and {@link JsonWebProof#parse} from 1..N threads at a fixed total arrival
+ * rate and reports throughput, latency percentiles and allocation rate for each thread count.
+ * <p>
+ * Every operation has an intended start time on a fixed schedule, and its latency is measured from that intended
+ * start rather than from when it actually began. When an operation stalls, the operations queued up behind it are
+ * charged for the time they spent waiting, which corrects for coordinated omission. Run it from the command line:
+ *
+ * <pre>
+ * LoadHarness [--operation verify|parse|issue|derive] [--alg ES256] [--payloads 10] [--threads 1,2,4,8]
+ *             [--rate 1000] [--warmup 5] [--duration 30]
+ * </pre>
+ * <p>
+ * The rate is the total number of operations per second across all threads.
+ */
+public final class LoadHarness {
+
+    enum Operation {
+        ISSUE, DERIVE, PARSE, VERIFY
+    }
+
+    private final Operation operation;
+    private final JsonProofAlgorithm algorithm;
+    private final Object[] payloads;
+    private final String issuedCompactForm;
+    private final String presentedCompactForm;
+
+    LoadHarness(Operation operation, String jwsAlgorithm, int payloadCount) {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(jwsAlgorithm);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(jwsAlgorithm);
+
+        this.operation = operation;
+        this.algorithm = new SingleUseJsonProofAlgorithm(jwsAlgorithm, issuerKey, holderKey);
+        this.payloads = new Object[payloadCount];
+
+        for (int i = 0; i < payloadCount; i++) {
+            payloads[i] = (i % 2 == 0) ? "payload-" + i : i;
+        }
+
+        JsonWebProof issued = algorithm.issue(payloads);
+        this.issuedCompactForm = issued.serialize();
+        this.presentedCompactForm = algorithm.derive(issued, 0).serialize();
+    }
+
+    /**
+     * Run one operation. The result is returned so that the JIT can't discard the work.
+     */
+    Object runOnce() {
+        switch (operation) {
+            case ISSUE:
+                return algorithm.issue(payloads).serialize();
+            case DERIVE:
+                return algorithm.derive(JsonWebProof.parse(algorithm, issuedCompactForm), 0).serialize();
+            case PARSE:
+                return JsonWebProof.parse(algorithm, presentedCompactForm);
+            case VERIFY:
+                JsonWebProof jwp = JsonWebProof.parse(algorithm, presentedCompactForm);
+                algorithm.verify(jwp);
+                return jwp;
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    /**
+     * Run the operation from the given number of threads at a fixed total rate.
+     *
+     * @param threads         the number of load threads
+     * @param ratePerSecond   the total number of operations to start per second, across all threads
+     * @param durationSeconds how long to run for
+     * @return the measured results
+     */
+    Result run(int threads, double ratePerSecond, double durationSeconds) throws InterruptedException {
+
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final boolean measureAllocation = threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported();
+
+        // Each thread gets an equal share of the rate, with start times staggered across the first interval
+        final long intervalNanos = (long) (1e9 * threads / ratePerSecond);
+        final long durationNanos = (long) (durationSeconds * 1e9);
+        final long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        final long endNanos = startNanos + durationNanos;
+
+        final List<LatencyHistogram> histograms = new ArrayList<>();
+        final AtomicLong allocatedBytes = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final Object[] sink = new Object[threads];
+
+        for (int t = 0; t < threads; t++) {
+
+            final int threadIndex = t;
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histograms.add(histogram);
+
+            Thread thread = new Thread(() -> {
+                final long threadId = Thread.currentThread().getId();
+                final long allocatedBefore = measureAllocation
+                        ? ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(threadId) : 0;
+                try {
+                    long intendedStart = startNanos + intervalNanos * threadIndex / threads;
+                    while (intendedStart < endNanos) {
+                        long now;
+                        while ((now = System.nanoTime()) < intendedStart) {
+                            LockSupport.parkNanos(intendedStart - now);
+                        }
+                        try {
+                            sink[threadIndex] = runOnce();
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                        }
+                        histogram.record(System.nanoTime() - intendedStart);
+                        intendedStart += intervalNanos;
+                    }
+                } finally {
+                    if (measureAllocation) {
+                        allocatedBytes.addAndGet(
+                                ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(threadId) - allocatedBefore);
+                    }
+                    finished.countDown();
+                }
+            }, "jwp4j-load-" + t);
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        finished.await();
+
+        final long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        final LatencyHistogram merged = new LatencyHistogram();
+        histograms.forEach(merged::add);
+
+        return new Result(threads, ratePerSecond, merged, errors.get(), elapsedNanos,
+                measureAllocation ? allocatedBytes.get() : -1);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Operation operation = Operation.VERIFY;
+        String alg = "ES256";
+        int payloadCount = 10;
+        int[] threadCounts = {1, 2, 4, Runtime.getRuntime().availableProcessors()};
+        double rate = 1000;
+        double warmupSeconds = 5;
+        double durationSeconds = 30;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = (i + 1 < args.length) ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--operation":
+                    operation = Operation.valueOf(requireValue(args[i], value).toUpperCase(Locale.ROOT));
+                    break;
+                case "--alg":
+                    alg = requireValue(args[i], value);
+                    break;
+                case "--payloads":
+                    payloadCount = Integer.parseInt(requireValue(args[i], value));
+                    break;
+                case "--threads":
+                    threadCounts = Arrays.stream(requireValue(args[i], value).split(","))
+                            .mapToInt(Integer::parseInt)
+                            .toArray();
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(requireValue(args[i], value));
+                    break;
+                case "--warmup":
+                    warmupSeconds = Double.parseDouble(requireValue(args[i], value));
+                    break;
+                case "--duration":
+                    durationSeconds = Double.parseDouble(requireValue(args[i], value));
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.err.println("Usage: LoadHarness [--operation verify|parse|issue|derive] [--alg ES256] "
+                            + "[--payloads 10] [--threads 1,2,4,8] [--rate 1000] [--warmup 5] [--duration 30]");
+                    System.exit(2);
+            }
+            i++;
+        }
+
+        LoadHarness harness = new LoadHarness(operation, alg, payloadCount);
+
+        System.out.println(format("%s SU-%s with %d payloads at %.0f ops/s", operation, alg, payloadCount, rate));
+        System.out.println(Result.HEADER);
+
+        for (int threads : threadCounts) {
+            if (warmupSeconds > 0)
+                harness.run(threads, rate, warmupSeconds);
+            System.out.println(harness.run(threads, rate, durationSeconds));
+        }
+    }
+
+    private static String requireValue(String option, String value) {
+        if (null == value)
+            throw new IllegalArgumentException("Missing value for " + option);
+        return value;
+    }
+
+    /**
+     * The measurements for one run of the harness.
+     */
+    static final class Result {
+
+        static final String HEADER = format("%7s %10s %10s %10s %10s %10s %10s %8s %10s %10s",
+                "threads", "target/s", "actual/s", "p50 us", "p99 us", "p99.9 us", "max us", "errors", "alloc MB/s", "B/op");
+
+        final int threads;
+        final double targetRate;
+        final LatencyHistogram histogram;
+        final long errors;
+        final long elapsedNanos;
+        final long allocatedBytes;
+
+        Result(int threads, double targetRate, LatencyHistogram histogram, long errors, long elapsedNanos, long allocatedBytes) {
+            this.threads = threads;
+            this.targetRate = targetRate;
+            this.histogram = histogram;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double getThroughput() {
+            return histogram.getTotalCount() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            long operations = Math.max(1, histogram.getTotalCount());
+            return format("%7d %10.0f %10.0f %10.1f %10.1f %10.1f %10.1f %8d %10s %10s",
+                    threads,
+                    targetRate,
+                    getThroughput(),
+                    histogram.getValueAtPercentile(50) / 1e3,
+                    histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getValueAtPercentile(99.9) / 1e3,
+                    histogram.getMaxValue() / 1e3,
+                    errors,
+                    (allocatedBytes < 0) ? "n/a" : format("%.1f", allocatedBytes * 1e9 / elapsedNanos / (1024 * 1024)),
+                    (allocatedBytes < 0) ? "n/a" : Long.toString(allocatedBytes / operations));
+        }
+    }
+
+}
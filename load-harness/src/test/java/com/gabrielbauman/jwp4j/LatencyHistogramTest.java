@@ -0,0 +1,53 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat(histogram.getTotalCount()).isEqualTo(100_000);
+        assertThat(histogram.getMaxValue()).isEqualTo(100_000_000);
+        assertThat((double) histogram.getValueAtPercentile(50)).isCloseTo(50_000_000, within(50_000_000 * 0.02));
+        assertThat((double) histogram.getValueAtPercentile(99)).isCloseTo(99_000_000, within(99_000_000 * 0.02));
+        assertThat((double) histogram.getValueAtPercentile(99.9)).isCloseTo(99_900_000, within(99_900_000 * 0.02));
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100_000_000);
+    }
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+
+        for (long value : new long[]{0, 1, 63, 64, 65, 127, 128, 1_000_003, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertThat(LatencyHistogram.highestValueIn(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0)
+                assertThat(LatencyHistogram.highestValueIn(index - 1)).isLessThan(value);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(1_000_000);
+
+        first.add(second);
+
+        assertThat(first.getTotalCount()).isEqualTo(2);
+        assertThat(first.getMaxValue()).isEqualTo(1_000_000);
+        assertThat(first.getValueAtPercentile(50)).isEqualTo(10);
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadHarnessTest {
+
+    @Test
+    public void testShortRun() throws InterruptedException {
+
+        LoadHarness harness = new LoadHarness(LoadHarness.Operation.VERIFY, "ES256", 3);
+        LoadHarness.Result result = harness.run(2, 200, 0.25);
+
+        assertThat(result.errors).isZero();
+        assertThat(result.histogram.getTotalCount()).isGreaterThan(0);
+        assertThat(result.toString()).isNotBlank();
+    }
+
+}
@@ -0,0 +1,344 @@
+package com.gabrielbauman.jwp4j;
+
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.lang.JoseException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+
+/**
+ * Re-verifies files of newline-delimited compact serialized JWPs. The input file is memory-mapped and split into
+ * line-aligned chunks which are parsed and verified in parallel using a configured {@link JsonProofAlgorithm}. One
+ * result line of the form {@code <offset> <status>[ <reason>]} is written for every JWP in the input, in input order,
+ * where offset is the byte offset of the JWP within the input file.
+ */
+public final class BulkVerifier {
+
+    static final String STATUS_VALID = "VALID";
+    static final String STATUS_INVALID = "INVALID";
+
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int BOUNDARY_SCAN_WINDOW = 64 * 1024;
+
+    private final JsonProofAlgorithm algorithm;
+    private final int parallelism;
+    private final int chunkSize;
+
+    public BulkVerifier(JsonProofAlgorithm algorithm) {
+        this(algorithm, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public BulkVerifier(JsonProofAlgorithm algorithm, int parallelism, int chunkSize) {
+        if (null == algorithm)
+            throw new IllegalArgumentException("algorithm cannot be null");
+        else if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        else if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+
+        this.algorithm = algorithm;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Verify every JWP in the input file, writing one result line per JWP to the output file.
+     *
+     * @param input  a file of newline-delimited compact serialized JWPs
+     * @param output the file to write results to; it is created or truncated
+     * @return a summary of the run
+     * @throws IOException if the input can't be read or the output can't be written
+     */
+    public Summary verify(Path input, Path output) throws IOException {
+
+        final long startNanos = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "jwp4j-bulk-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+
+            final long size = channel.size();
+            final List<long[]> chunks = findChunkBoundaries(channel, size);
+
+            // Keep a bounded window of chunks in flight so that results are written in input order without holding
+            // the results for the whole file in memory.
+            final ArrayDeque<Future<ChunkResult>> inFlight = new ArrayDeque<>();
+            final int window = parallelism * 2;
+
+            long total = 0;
+            long valid = 0;
+            int next = 0;
+
+            while (next < chunks.size() || !inFlight.isEmpty()) {
+
+                while (next < chunks.size() && inFlight.size() < window) {
+                    final long[] chunk = chunks.get(next++);
+                    inFlight.add(executor.submit(() -> verifyChunk(channel, chunk[0], chunk[1])));
+                }
+
+                ChunkResult result = await(inFlight.removeFirst());
+                out.write(result.output);
+                total += result.total;
+                valid += result.valid;
+            }
+
+            return new Summary(total, valid, size, System.nanoTime() - startNanos);
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the input into chunks of roughly chunkSize bytes, moving each boundary forward to just past the next
+     * newline so that no JWP straddles two chunks.
+     */
+    private List<long[]> findChunkBoundaries(FileChannel channel, long size) throws IOException {
+
+        List<long[]> result = new ArrayList<>();
+
+        long start = 0;
+
+        while (start < size) {
+
+            long end = Math.min(start + chunkSize, size);
+
+            while (end < size) {
+                int windowSize = (int) Math.min(BOUNDARY_SCAN_WINDOW, size - end);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, end, windowSize);
+                int newline = indexOf(buffer, 0, windowSize, (byte) '\n');
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += windowSize;
+            }
+
+            if (end - start > Integer.MAX_VALUE)
+                throw new IOException(format("Line starting near offset %d is too long to map", start));
+
+            result.add(new long[]{start, end});
+            start = end;
+        }
+
+        return result;
+    }
+
+    private ChunkResult verifyChunk(FileChannel channel, long chunkStart, long chunkEnd) throws IOException {
+
+        final int length = (int) (chunkEnd - chunkStart);
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, length);
+        final ByteBuffer reader = buffer.duplicate();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        byte[] line = new byte[256];
+        long total = 0;
+        long valid = 0;
+        int lineStart = 0;
+
+        while (lineStart < length) {
+
+            int lineEnd = indexOf(buffer, lineStart, length, (byte) '\n');
+            if (lineEnd < 0)
+                lineEnd = length;
+
+            int nextLineStart = lineEnd + 1;
+
+            // Tolerate CRLF line endings
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+                lineEnd--;
+
+            int lineLength = lineEnd - lineStart;
+
+            if (lineLength > 0) {
+
+                if (line.length < lineLength)
+                    line = new byte[Math.max(lineLength, line.length * 2)];
+
+                reader.position(lineStart);
+                reader.get(line, 0, lineLength);
+
+                // Compact serialized JWPs are pure ASCII, so there's no need to go through a UTF-8 decoder
+                String status = verifyOne(new String(line, 0, lineLength, StandardCharsets.ISO_8859_1));
+
+                output.write(Long.toString(chunkStart + lineStart).getBytes(StandardCharsets.US_ASCII));
+                output.write(' ');
+                output.write(status.getBytes(StandardCharsets.UTF_8));
+                output.write('\n');
+
+                total++;
+                if (STATUS_VALID.equals(status))
+                    valid++;
+            }
+
+            lineStart = nextLineStart;
+        }
+
+        return new ChunkResult(output.toByteArray(), total, valid);
+    }
+
+    private String verifyOne(String compactForm) {
+
+        // Failures are returned rather than thrown, so a file full of junk costs about as much as a file of valid JWPs.
+        // A JWP the algorithm throws on hasn't been verified either, so it's reported as invalid too.
+        final VerificationResult result;
+        try {
+            result = JsonWebProof.verify(algorithm, compactForm);
+        } catch (RuntimeException e) {
+            return STATUS_INVALID + " " + reason(e);
+        }
+
+        return result.isValid()
+                ? STATUS_VALID
+                : STATUS_INVALID + " " + reason((null != result.getMessage()) ? result.getMessage() : result.getCode().name());
+    }
+
+    private static String reason(Throwable e) {
+        return reason((null != e.getMessage()) ? e.getMessage() : e.getClass().getSimpleName());
+    }
+
+    private static String reason(String message) {
+        return message.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Chunk verification failed", e.getCause());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, JoseException {
+
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: BulkVerifier <issuer-jwk-file> <input-file> <output-file> [threads]");
+            System.exit(2);
+        }
+
+        PublicJsonWebKey issuerKey = PublicJsonWebKey.Factory.newPublicJwk(
+                Files.readString(Paths.get(args[0]), StandardCharsets.UTF_8));
+
+        // Only JWPs signed with the issuer key's algorithm are accepted, whatever their headers say; keys without an
+        // "alg" get the usual algorithm for their type and curve
+        String jwsAlgorithm = JoseUtils.jwsAlgorithmFor(issuerKey);
+        if (null == jwsAlgorithm) {
+            System.err.println("The issuer JWK has no \"alg\", and none can be inferred from its key type and curve");
+            System.exit(2);
+        }
+
+        JsonProofAlgorithm algorithm =
+                new SingleUseJsonProofAlgorithm(jwsAlgorithm, issuerKey, null);
+
+        int threads = (args.length == 4)
+                ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+
+        Summary summary = new BulkVerifier(algorithm, threads, DEFAULT_CHUNK_SIZE)
+                .verify(Paths.get(args[1]), Paths.get(args[2]));
+
+        System.out.println(summary);
+    }
+
+    private static final class ChunkResult {
+
+        final byte[] output;
+        final long total;
+        final long valid;
+
+        ChunkResult(byte[] output, long total, long valid) {
+            this.output = output;
+            this.total = total;
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * Counts and throughput for a single {@link BulkVerifier} run.
+     */
+    public static final class Summary {
+
+        private final long total;
+        private final long valid;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        Summary(long total, long valid, long bytes, long elapsedNanos) {
+            this.total = total;
+            this.valid = valid;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getValid() {
+            return valid;
+        }
+
+        public long getFailed() {
+            return total - valid;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getProofsPerSecond() {
+            return (elapsedNanos > 0) ? total * 1e9 / elapsedNanos : 0;
+        }
+
+        public double getMegabytesPerSecond() {
+            return (elapsedNanos > 0) ? (bytes / (1024.0 * 1024.0)) * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return format("%d JWPs (%d valid, %d failed) in %.3f s: %.1f JWPs/s, %.2f MiB/s",
+                    total, valid, getFailed(), elapsedNanos / 1e9, getProofsPerSecond(), getMegabytesPerSecond());
+        }
+    }
+
+}
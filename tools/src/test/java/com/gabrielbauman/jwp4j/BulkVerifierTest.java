@@ -0,0 +1,82 @@
+package com.gabrielbauman.jwp4j;
+
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.gabrielbauman.jwp4j.JoseUtils.generateKeyWithJwsAlgorithm;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jose4j.jws.AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256;
+
+public class BulkVerifierTest {
+
+    @Test
+    public void testVerifiesEveryLineInOrder(@TempDir Path directory) throws IOException {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm algorithm =
+                new SingleUseJsonProofAlgorithm(
+                        ECDSA_USING_P256_CURVE_AND_SHA256,
+                        issuerKey,
+                        holderKey);
+
+        String first = algorithm.issue("Gabriel", "Bauman").serialize();
+        String second = algorithm.issue(1, 2, 3).serialize();
+        String third = algorithm.issue(true).serialize();
+
+        Path input = directory.resolve("input.txt");
+        Path output = directory.resolve("output.txt");
+
+        Files.writeString(input, first + "\n" + "not.a.jwp\r\n" + "\n" + second + "\n" + third, StandardCharsets.UTF_8);
+
+        // Use a tiny chunk size so that every line lands in a different chunk
+        BulkVerifier.Summary summary = new BulkVerifier(algorithm, 3, 16).verify(input, output);
+
+        assertThat(summary.getTotal()).isEqualTo(4);
+        assertThat(summary.getValid()).isEqualTo(3);
+        assertThat(summary.getFailed()).isEqualTo(1);
+
+        List<String> results = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(results).hasSize(4);
+        assertThat(results.get(0)).isEqualTo("0 VALID");
+        assertThat(results.get(1)).startsWith((first.length() + 1) + " INVALID ");
+        assertThat(results.get(2)).isEqualTo((first.length() + 1 + 11 + 1) + " VALID");
+        assertThat(results.get(3)).isEqualTo((first.length() + 1 + 11 + 1 + second.length() + 1) + " VALID");
+    }
+
+    @Test
+    public void testAlgSwappedJwpsAreInvalid(@TempDir Path directory) throws Exception {
+
+        PublicJsonWebKey issuerKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey holderKey = generateKeyWithJwsAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256);
+
+        JsonProofAlgorithm issuer = new SingleUseJsonProofAlgorithm(ECDSA_USING_P256_CURVE_AND_SHA256, issuerKey, holderKey);
+        JsonProofAlgorithm verifier = new SingleUseJsonProofAlgorithm(JoseUtils.jwsAlgorithmFor(issuerKey),
+                PublicJsonWebKey.Factory.newPublicJwk(issuerKey.getPublicKey()), null);
+
+        String jwp = issuer.issue("Gabriel", "Bauman").serialize();
+        int dot = jwp.indexOf('.');
+        String swapped = Base64Utils.encode(Base64Utils.decodeAsString(jwp.substring(0, dot))
+                .replace("SU-ES256", "SU-RS256")) + jwp.substring(dot);
+
+        Path input = directory.resolve("input.txt");
+        Path output = directory.resolve("output.txt");
+        Files.writeString(input, jwp + "\n" + swapped, StandardCharsets.UTF_8);
+
+        BulkVerifier.Summary summary = new BulkVerifier(verifier, 1, 1024).verify(input, output);
+
+        assertThat(summary.getValid()).isEqualTo(1);
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8)).containsExactly(
+                "0 VALID",
+                (jwp.length() + 1) + " INVALID This JWP's alg SU-RS256 doesn't match the issuer key's algorithm");
+    }
+
+}
@@ -0,0 +1,625 @@
+package com.gabrielbauman.jwp4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.String.format;
+
+/**
+ * A store of single-use compact serialized JWPs for holders, kept in a memory-mapped file rather than on the heap and
+ * indexed by credential type. Each stored JWP is handed out by {@link #take(String)} exactly once.
+ * <p>
+ * The only heap state is one growable array of record offsets per credential type, so millions of stored JWPs cost
+ * next to nothing to the garbage collector. Taking a JWP is constant-time and lock-free: a taker claims the next index
+ * slot for the type with a compare-and-set, then flips the record's state in the mapped file from ready to taken with
+ * another compare-and-set, so a JWP can't be handed out twice even by racing threads. Adding JWPs and compacting the
+ * store take a lock, and takers only ever wait on it while a compaction is moving the records they're trying to take.
+ * <p>
+ * The file is a small header followed by 8-byte aligned records:
+ *
+ * <pre>
+ * header: magic (int) | version (int) | committed end of records (long)
+ * record: state (int) | type length (int) | JWP length (int) | reserved (int) | type (UTF-8) | JWP (ASCII) | padding
+ * </pre>
+ * <p>
+ * New records are written in the not-ready state, flushed, marked ready, and then made visible by advancing the
+ * committed end in the header, which is flushed again. A crash part way through an add leaves nothing behind but
+ * uncommitted bytes past the committed end, which are ignored and overwritten. Taken states are written straight to
+ * the mapped file, so they survive the process crashing; call {@link #sync()} to also make them survive the machine
+ * crashing. Compaction copies the unused records into a new file, flushes it, atomically renames it over the old one
+ * and flushes the directory, so a crash during compaction leaves the old file intact. A compaction that fails leaves
+ * the wallet as it was.
+ * <p>
+ * A store is limited to a single mapping of just under 2GB, which holds a couple of million typical JWPs.
+ */
+public final class CredentialWallet implements Closeable {
+
+    static final int MAGIC = 0x4a575057; // "JWPW"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 16;
+
+    private static final int COMMITTED_END_OFFSET = 8;
+
+    // Record states
+    static final int WRITING = 0;
+    static final int READY = 1;
+    static final int TAKEN = 2;
+    static final int MOVING = 3; // Ready, but being copied by a compaction; treated as ready after a crash
+
+    private static final int MAX_TYPE_LENGTH = 255;
+
+    private static final VarHandle INT_VIEW =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Returned by Segment.take when a compaction moved the record out from under the taker
+    private static final String MOVED = new String("moved");
+
+    private final Path path;
+    private final int capacity;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile Segment current;
+    private volatile boolean closed;
+
+    private CredentialWallet(Path path, int capacity, Segment segment) {
+        this.path = path;
+        this.capacity = capacity;
+        this.current = segment;
+    }
+
+    /**
+     * Open a wallet, creating it if it doesn't exist and recovering it if it was left in an inconsistent state.
+     *
+     * @param path     the wallet file
+     * @param capacity the size of the wallet file in bytes. Existing wallets larger than this keep their size.
+     * @return the open wallet
+     * @throws IOException if the file can't be opened, mapped or recovered
+     */
+    public static CredentialWallet open(Path path, int capacity) throws IOException {
+
+        if (null == path)
+            throw new IllegalArgumentException("path cannot be null");
+        else if (capacity < HEADER_SIZE + RECORD_HEADER_SIZE)
+            throw new IllegalArgumentException("capacity is too small");
+
+        // A leftover compaction file means a compaction crashed before its rename; the original is still intact
+        Files.deleteIfExists(compactionPath(path));
+
+        return new CredentialWallet(path, capacity, Segment.open(path, capacity));
+    }
+
+    /**
+     * Add a JWP to the wallet.
+     *
+     * @param type        the credential type to file the JWP under
+     * @param compactForm the compact serialized JWP
+     * @throws IOException if the wallet is full or can't be written
+     */
+    public void add(String type, String compactForm) throws IOException {
+        addAll(type, List.of(compactForm));
+    }
+
+    /**
+     * Add a JWP to the wallet.
+     *
+     * @param type the credential type to file the JWP under
+     * @param jwp  the JWP
+     * @throws IOException if the wallet is full or can't be written
+     */
+    public void add(String type, JsonWebProof jwp) throws IOException {
+        if (null == jwp)
+            throw new IllegalArgumentException("jwp cannot be null");
+        addAll(type, List.of(jwp.serialize()));
+    }
+
+    /**
+     * Add a batch of JWPs to the wallet. The batch becomes visible (and durable) all at once, and costs three flushes
+     * however large it is.
+     *
+     * @param type         the credential type to file the JWPs under
+     * @param compactForms the compact serialized JWPs
+     * @throws IOException if the wallet doesn't have room for the whole batch or can't be written
+     */
+    public void addAll(String type, Collection<String> compactForms) throws IOException {
+
+        final byte[] typeBytes = encodeType(type);
+
+        if (null == compactForms)
+            throw new IllegalArgumentException("compactForms cannot be null");
+
+        final byte[][] records = new byte[compactForms.size()][];
+        int i = 0;
+        for (String compactForm : compactForms) {
+            records[i++] = encodeJwp(compactForm);
+        }
+
+        writeLock.lock();
+        try {
+            ensureOpen();
+            current.append(type, typeBytes, records);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Take an unused JWP of the given type. Each JWP is returned by exactly one call to this method, across all
+     * threads and across restarts.
+     *
+     * @param type the credential type
+     * @return a compact serialized JWP, or null if there are no unused JWPs of the type
+     */
+    public String take(String type) {
+
+        for (; ; ) {
+
+            ensureOpen();
+
+            final String result = current.take(type);
+
+            if (result != MOVED)
+                return result;
+
+            // A compaction moved the record we claimed into a new segment. Wait for it to finish, then try again.
+            writeLock.lock();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of JWPs of the given type that haven't been taken yet
+     */
+    public int available(String type) {
+        ensureOpen();
+        return current.available(type);
+    }
+
+    /**
+     * @return the credential types that have ever been added to the wallet and not compacted away
+     */
+    public Set<String> getTypes() {
+        ensureOpen();
+        return Set.copyOf(current.indexes.keySet());
+    }
+
+    /**
+     * Flush taken states to disk, so that JWPs taken so far stay taken even if the machine crashes.
+     */
+    public void sync() {
+        ensureOpen();
+        current.buffer.force();
+    }
+
+    /**
+     * Reclaim the space used by taken JWPs by copying the unused ones into a new file and atomically replacing the
+     * wallet file with it. Takes may run concurrently with compaction.
+     *
+     * @throws IOException if the new file can't be written or renamed into place
+     */
+    public void compact() throws IOException {
+
+        writeLock.lock();
+        try {
+            ensureOpen();
+
+            final Segment old = current;
+            final Path compactionPath = compactionPath(path);
+            Files.deleteIfExists(compactionPath);
+
+            Segment compacted = null;
+            try {
+                compacted = Segment.create(compactionPath, Math.max(capacity, old.buffer.capacity()));
+
+                // Claim every ready record before copying it, so that a racing taker can't take a record that's also
+                // being copied. Takers that lose the race see MOVING and retry on the compacted segment.
+                for (int offset = HEADER_SIZE; offset < old.end; offset = old.nextRecord(offset)) {
+                    if ((boolean) INT_VIEW.compareAndSet(old.buffer, offset, READY, MOVING))
+                        compacted.copyRecord(old, offset);
+                }
+
+                compacted.commit();
+
+                Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            } catch (IOException | RuntimeException e) {
+                // Put the claimed records back, so takers retrying on the old segment find them again
+                old.restoreMoving();
+                try {
+                    if (null != compacted)
+                        compacted.close();
+                    Files.deleteIfExists(compactionPath);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+
+            current = compacted;
+            old.close();
+
+            // The rename is only durable once the directory entry pointing at the new file is
+            syncDirectory(path.toAbsolutePath().getParent());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Flush and close the wallet. The mapping itself is released when it's garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            current.buffer.force();
+            current.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("The wallet is closed");
+    }
+
+    private static void syncDirectory(Path directory) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Some platforms (Windows) can't open directories; renames there are as durable as the platform makes them
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static Path compactionPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".compacting");
+    }
+
+    private static byte[] encodeType(String type) {
+        if (null == type || type.isEmpty())
+            throw new IllegalArgumentException("type cannot be null or empty");
+        byte[] bytes = type.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TYPE_LENGTH)
+            throw new IllegalArgumentException(format("type cannot be longer than %d bytes", MAX_TYPE_LENGTH));
+        return bytes;
+    }
+
+    private static byte[] encodeJwp(String compactForm) {
+        if (null == compactForm || compactForm.isEmpty())
+            throw new IllegalArgumentException("compactForm cannot be null or empty");
+        for (int i = 0; i < compactForm.length(); i++) {
+            if (compactForm.charAt(i) > 0x7f)
+                throw new IllegalArgumentException("compactForm must be ASCII");
+        }
+        return compactForm.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static int recordSize(int typeLength, int jwpLength) {
+        return (RECORD_HEADER_SIZE + typeLength + jwpLength + 7) & ~7;
+    }
+
+    /**
+     * A mapped wallet file and the in-memory index of its records.
+     */
+    private static final class Segment {
+
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final Map<String, TypeIndex> indexes = new ConcurrentHashMap<>();
+
+        // The committed end of the records; only changed under the wallet's write lock
+        int end;
+
+        private Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        static Segment create(Path path, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                Segment segment = new Segment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+                segment.buffer.putInt(0, MAGIC);
+                segment.buffer.putInt(4, VERSION);
+                segment.end = HEADER_SIZE;
+                return segment;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        static Segment open(Path path, int capacity) throws IOException {
+
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            try {
+                final long existingSize = channel.size();
+
+                if (existingSize > Integer.MAX_VALUE)
+                    throw new IOException(format("%s is too large to be a wallet", path));
+
+                final Segment segment = new Segment(channel,
+                        channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(existingSize, capacity)));
+
+                if (existingSize < HEADER_SIZE) {
+                    // A new wallet, or one that crashed before its header was ever written
+                    segment.buffer.putInt(0, MAGIC);
+                    segment.buffer.putInt(4, VERSION);
+                    segment.end = HEADER_SIZE;
+                    segment.commit();
+                } else {
+                    segment.recover(path);
+                }
+
+                return segment;
+
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Rebuild the index from the committed records, putting back records a crashed compaction was moving.
+         */
+        private void recover(Path path) throws IOException {
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException(format("%s is not a wallet", path));
+
+            final long committedEnd = buffer.getLong(COMMITTED_END_OFFSET);
+
+            if (committedEnd < HEADER_SIZE || committedEnd > buffer.capacity())
+                throw new IOException(format("%s is corrupt: bad committed end %d", path, committedEnd));
+
+            end = (int) committedEnd;
+
+            for (int offset = HEADER_SIZE; offset < end; ) {
+
+                final int state = buffer.getInt(offset);
+                final int typeLength = buffer.getInt(offset + 4);
+                final int jwpLength = buffer.getInt(offset + 8);
+
+                if (typeLength < 1 || typeLength > MAX_TYPE_LENGTH || jwpLength < 1
+                        || (long) offset + recordSize(typeLength, jwpLength) > end)
+                    throw new IOException(format("%s is corrupt: bad record at offset %d", path, offset));
+
+                if (state == MOVING)
+                    buffer.putInt(offset, READY);
+
+                if (state == READY || state == MOVING)
+                    index(readType(offset)).append(offset);
+
+                offset += recordSize(typeLength, jwpLength);
+            }
+        }
+
+        /**
+         * Undo a failed compaction: put back the records it claimed and rebuild the index. Takers claimed index slots
+         * for some of those records and gave up on them when they saw MOVING, so the old index would never hand them
+         * out again. Records taken in the meantime are left out of the rebuilt index.
+         */
+        void restoreMoving() {
+
+            final Map<String, TypeIndex> rebuilt = new HashMap<>();
+
+            for (int offset = HEADER_SIZE; offset < end; offset = nextRecord(offset)) {
+                INT_VIEW.compareAndSet(buffer, offset, MOVING, READY);
+                if ((int) INT_VIEW.getVolatile(buffer, offset) == READY)
+                    rebuilt.computeIfAbsent(readType(offset), t -> new TypeIndex()).append(offset);
+            }
+
+            for (String type : indexes.keySet()) {
+                rebuilt.putIfAbsent(type, new TypeIndex());
+            }
+            indexes.putAll(rebuilt);
+        }
+
+        void append(String type, byte[] typeBytes, byte[][] records) throws IOException {
+
+            long total = 0;
+            for (byte[] record : records) {
+                total += recordSize(typeBytes.length, record.length);
+            }
+
+            if (end + total > buffer.capacity())
+                throw new IOException("The wallet is full; compact it or reopen it with a larger capacity");
+
+            final int[] offsets = new int[records.length];
+            int position = end;
+
+            // Write the records as not ready, and flush them
+            for (int i = 0; i < records.length; i++) {
+                offsets[i] = position;
+                position = writeRecord(position, WRITING, typeBytes, records[i]);
+            }
+            buffer.force();
+
+            // Mark them ready, then commit them by moving the end past them
+            for (int offset : offsets) {
+                INT_VIEW.setVolatile(buffer, offset, READY);
+            }
+            end = position;
+            commit();
+
+            TypeIndex index = index(type);
+            for (int offset : offsets) {
+                index.append(offset);
+            }
+        }
+
+        void copyRecord(Segment from, int fromOffset) throws IOException {
+
+            final int typeLength = from.buffer.getInt(fromOffset + 4);
+            final int jwpLength = from.buffer.getInt(fromOffset + 8);
+            final int size = recordSize(typeLength, jwpLength);
+
+            if (end + size > buffer.capacity())
+                throw new IOException("The compacted wallet is full");
+
+            final ByteBuffer source = from.buffer.duplicate();
+            source.position(fromOffset).limit(fromOffset + size);
+
+            final ByteBuffer target = buffer.duplicate();
+            target.position(end);
+            target.put(source);
+
+            buffer.putInt(end, READY);
+            index(from.readType(fromOffset)).append(end);
+            end += size;
+        }
+
+        void commit() {
+            buffer.force();
+            buffer.putLong(COMMITTED_END_OFFSET, end);
+            buffer.force();
+        }
+
+        String take(String type) {
+
+            final TypeIndex index = indexes.get(type);
+
+            if (null == index)
+                return null;
+
+            for (; ; ) {
+
+                final int offset = index.claim();
+
+                if (offset < 0)
+                    return null;
+
+                if ((boolean) INT_VIEW.compareAndSet(buffer, offset, READY, TAKEN))
+                    return readJwp(offset);
+
+                if ((int) INT_VIEW.getVolatile(buffer, offset) == MOVING)
+                    return MOVED;
+
+                // Otherwise another taker got it first; try the next one
+            }
+        }
+
+        int available(String type) {
+            final TypeIndex index = indexes.get(type);
+            return (null == index) ? 0 : index.available();
+        }
+
+        int nextRecord(int offset) {
+            return offset + recordSize(buffer.getInt(offset + 4), buffer.getInt(offset + 8));
+        }
+
+        private int writeRecord(int position, int state, byte[] typeBytes, byte[] jwp) {
+            final int size = recordSize(typeBytes.length, jwp.length);
+            final ByteBuffer target = buffer.duplicate();
+            target.position(position);
+            target.order(ByteOrder.LITTLE_ENDIAN);
+            target.putInt(state).putInt(typeBytes.length).putInt(jwp.length).putInt(0);
+            target.put(typeBytes);
+            target.put(jwp);
+            while (target.position() < position + size) {
+                target.put((byte) 0);
+            }
+            return position + size;
+        }
+
+        private String readType(int offset) {
+            final byte[] bytes = new byte[buffer.getInt(offset + 4)];
+            final ByteBuffer source = buffer.duplicate();
+            source.position(offset + RECORD_HEADER_SIZE);
+            source.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String readJwp(int offset) {
+            final int typeLength = buffer.getInt(offset + 4);
+            final byte[] bytes = new byte[buffer.getInt(offset + 8)];
+            final ByteBuffer source = buffer.duplicate();
+            source.position(offset + RECORD_HEADER_SIZE + typeLength);
+            source.get(bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        private TypeIndex index(String type) {
+            return indexes.computeIfAbsent(type, t -> new TypeIndex());
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * The offsets of the records of one credential type, in the order they were added, and a cursor pointing at the
+     * next one to hand out. Appends happen under the wallet's write lock; claims are lock-free.
+     */
+    private static final class TypeIndex {
+
+        private final AtomicInteger cursor = new AtomicInteger();
+        private volatile int[] offsets = new int[64];
+        private volatile int size;
+
+        void append(int offset) {
+            int[] current = offsets;
+            if (size == current.length) {
+                int[] grown = new int[current.length * 2];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                offsets = grown;
+                current = grown;
+            }
+            current[size] = offset;
+            size = size + 1;
+        }
+
+        /**
+         * @return the offset of the next unclaimed record, or -1 if they've all been claimed
+         */
+        int claim() {
+            for (; ; ) {
+                final int next = cursor.get();
+                // Read the size before the array; a grown array is published before the size that needs it
+                if (next >= size)
+                    return -1;
+                if (cursor.compareAndSet(next, next + 1))
+                    return offsets[next];
+            }
+        }
+
+        int available() {
+            return Math.max(0, size - cursor.get());
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.gabrielbauman.jwp4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CredentialWalletTest {
+
+    private static final int CAPACITY = 4 * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testTakeEachJwpOnce() throws Exception {
+
+        try (CredentialWallet wallet = CredentialWallet.open(tempDir.resolve("wallet"), CAPACITY)) {
+
+            wallet.addAll("email", List.of(jwp(1), jwp(2)));
+            wallet.add("age", jwp(3));
+
+            assertThat(wallet.getTypes()).containsExactlyInAnyOrder("email", "age");
+            assertThat(wallet.available("email")).isEqualTo(2);
+
+            assertThat(wallet.take("email")).isEqualTo(jwp(1));
+            assertThat(wallet.take("email")).isEqualTo(jwp(2));
+            assertThat(wallet.take("email")).isNull();
+            assertThat(wallet.take("age")).isEqualTo(jwp(3));
+            assertThat(wallet.take("unknown")).isNull();
+
+            assertThatThrownBy(() -> wallet.add("email", "not ascii é"))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void testStateSurvivesReopening() throws Exception {
+
+        Path path = tempDir.resolve("wallet");
+
+        try (CredentialWallet wallet = CredentialWallet.open(path, CAPACITY)) {
+            wallet.addAll("email", List.of(jwp(1), jwp(2), jwp(3)));
+            assertThat(wallet.take("email")).isEqualTo(jwp(1));
+        }
+
+        try (CredentialWallet wallet = CredentialWallet.open(path, CAPACITY)) {
+            assertThat(wallet.available("email")).isEqualTo(2);
+            assertThat(wallet.take("email")).isEqualTo(jwp(2));
+            assertThat(wallet.take("email")).isEqualTo(jwp(3));
+            assertThat(wallet.take("email")).isNull();
+        }
+    }
+
+    @Test
+    public void testFullWallet() throws Exception {
+
+        try (CredentialWallet wallet = CredentialWallet.open(tempDir.resolve("wallet"), 256)) {
+            wallet.add("email", jwp(1));
+            assertThatThrownBy(() -> wallet.addAll("email", List.of(jwp(2), jwp(3), jwp(4))))
+                    .isInstanceOf(IOException.class);
+            // A batch that doesn't fit is rejected as a whole
+            assertThat(wallet.available("email")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+
+        Path path = tempDir.resolve("wallet");
+
+        try (CredentialWallet wallet = CredentialWallet.open(path, CAPACITY)) {
+
+            List<String> jwps = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                jwps.add(jwp(i));
+            }
+            wallet.addAll("email", jwps);
+
+            for (int i = 0; i < 900; i++) {
+                wallet.take("email");
+            }
+
+            long before = usedBytes(path);
+            wallet.compact();
+
+            assertThat(usedBytes(path)).isLessThan(before / 5);
+            assertThat(wallet.available("email")).isEqualTo(100);
+            assertThat(wallet.take("email")).isEqualTo(jwp(900));
+
+            wallet.add("email", jwp(1000));
+        }
+
+        try (CredentialWallet wallet = CredentialWallet.open(path, CAPACITY)) {
+            assertThat(wallet.available("email")).isEqualTo(100);
+        }
+    }
+
+    @Test
+    public void testConcurrentTakesAndCompaction() throws Exception {
+
+        final int count = 20_000;
+        final int threads = 8;
+
+        try (CredentialWallet wallet = CredentialWallet.open(tempDir.resolve("wallet"), 16 * 1024 * 1024)) {
+
+            List<String> jwps = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                jwps.add(jwp(i));
+            }
+            wallet.addAll("email", jwps);
+
+            Set<String> taken = ConcurrentHashMap.newKeySet();
+            AtomicInteger duplicates = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+            try {
+                List<Future<?>> takers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    takers.add(executor.submit(() -> {
+                        start.await();
+                        String jwp;
+                        while (null != (jwp = wallet.take("email"))) {
+                            if (!taken.add(jwp))
+                                duplicates.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+
+                start.countDown();
+                wallet.compact();
+                wallet.compact();
+
+                for (Future<?> taker : takers) {
+                    taker.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertThat(duplicates.get()).isZero();
+            assertThat(taken).hasSize(count);
+            assertThat(wallet.available("email")).isZero();
+        }
+    }
+
+    private static long usedBytes(Path path) throws Exception {
+        // The file is preallocated, so measure the committed records rather than the file size
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteBuffer header = ByteBuffer.allocate(CredentialWallet.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            return header.getLong(8);
+        }
+    }
+
+    private static String jwp(int i) {
+        return "eyJhbGciOiJTVS1FUzI1NiJ9.MQ~Mg~" + Integer.toString(i, 36) + ".cHJvb2Y";
+    }
+
+}